@@ -1,29 +1,127 @@
 package com.example.cache.aerospike.configuration;
 
 import com.aerospike.client.*;
+import com.aerospike.client.async.EventLoops;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapPolicy;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.async.NioEventLoops;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.listener.DeleteListener;
+import com.aerospike.client.listener.RecordArrayListener;
+import com.aerospike.client.listener.RecordListener;
+import com.aerospike.client.listener.WriteListener;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.Replica;
 import com.aerospike.client.policy.WritePolicy;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 @Configuration
 public class AerospikeClientWrapper extends AerospikeConfig {
 
     protected AerospikeClient client;
+    // Same client as above, also able to read a key from it's prole for hedged reads
+    private HedgingAerospikeClient hedgingClient;
     private ObjectMapper mapper = new ObjectMapper();
 
+    // NIO event loops of the async commands. Null unless cache.aerospike.async.enabled
+    private EventLoops eventLoops;
+    private final AtomicInteger asyncInFlight = new AtomicInteger();
+    private final LongAdder asyncRejected = new LongAdder();
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private AerospikePolicyProperties policyProperties;
+
+    // Policies of each set, built from it's profile on first use
+    private final Map<String, Policy> readPolicies = new ConcurrentHashMap<>();
+    // Read policies of the first read of hedged reads: master first, so that the hedge can go to the prole
+    private final Map<String, Policy> hedgedReadPolicies = new ConcurrentHashMap<>();
+    private final Map<String, WritePolicy> writePolicies = new ConcurrentHashMap<>();
+    private final Map<String, BatchPolicy> batchPolicies = new ConcurrentHashMap<>();
+    private HedgedReads hedgedReads;
+    // Keys of sets with a sliding TTL that were touched within the touchIntervalMillis of the set
+    private final Map<String, Cache<String, Boolean>> recentlyTouched = new ConcurrentHashMap<>();
+
+    // Max keys remembered as recently touched, per set. Beyond this, some hot keys may get touched more often
+    private static final long MAX_TOUCHED_KEYS = 100000;
+
     public void createConn() {
         if(isAeroEnabled()){
             Host[] hosts = new Host[] {new Host(getAeroSpikeHost(), getAerospikePort())};
             setDefaultClientPolicies();
-            client = new AerospikeClient(clientPolicy, hosts);
+            if (isAsyncEnabled()) {
+                createEventLoops();
+            }
+            hedgedReads = new HedgedReads(policyProperties.getHedgeThreads(), meterRegistry);
+            hedgingClient = new HedgingAerospikeClient(clientPolicy, hosts);
+            client = hedgingClient;
+        }
+    }
+
+    /**
+     * Async commands run on a few NIO selector threads instead of holding a request thread each for the whole round
+     * trip. At most asyncMaxCommands are in process at a time (these also bound the async connections per node), the
+     * rest wait in the event loop queues, and commands are rejected with AsyncQueueFull once the queues are full.
+     */
+    private void createEventLoops() {
+        int loops = getAsyncEventLoopCount();
+        eventLoops = new NioEventLoops(getEventPolicy(loops), loops);
+        clientPolicy.eventLoops = eventLoops;
+        // Each in process command holds it's own connection
+        clientPolicy.maxConnsPerNode = Math.max(clientPolicy.maxConnsPerNode, getAsyncMaxCommands());
+        if (meterRegistry != null) {
+            Gauge.builder("aerospike.async.commands.inflight", asyncInFlight, AtomicInteger::get)
+                    .description("Async commands in process or queued on the event loops")
+                    .register(meterRegistry);
+            Gauge.builder("aerospike.async.saturation", this, AerospikeClientWrapper::getAsyncSaturation)
+                    .description("Async commands in flight over asyncMaxCommands. Above 1 means commands are queueing")
+                    .register(meterRegistry);
+            FunctionCounter.builder("aerospike.async.commands.rejected", asyncRejected, LongAdder::sum)
+                    .description("Async commands rejected because the event loop queues were full")
+                    .register(meterRegistry);
         }
     }
 
+    public boolean isAsyncAvailable() {
+        return client != null && eventLoops != null;
+    }
+
+    public int getAsyncInFlight() {
+        return asyncInFlight.get();
+    }
+
+    public double getAsyncSaturation() {
+        return (double) asyncInFlight.get() / Math.max(1, getAsyncMaxCommands());
+    }
+
+    public long getAsyncRejected() {
+        return asyncRejected.sum();
+    }
+
     public AerospikeClient getClient() {
         return this.client;
     }
@@ -32,22 +130,168 @@ public class AerospikeClientWrapper extends AerospikeConfig {
         if (this.client != null) {
             this.client.close();
         }
+        if (this.eventLoops != null) {
+            this.eventLoops.close();
+        }
+        if (this.hedgedReads != null) {
+            this.hedgedReads.shutdown();
+        }
     }
 
     protected void isConnected() {
         this.client.isConnected();
     }
 
+    public Policy getReadPolicy(String set) {
+        return readPolicies.computeIfAbsent(set, s -> applyProfile(new Policy(readPolicy), s));
+    }
+
+    public WritePolicy getWritePolicy(String set) {
+        return writePolicies.computeIfAbsent(set, s -> applyProfile(new WritePolicy(writePolicy), s));
+    }
+
+    public BatchPolicy getBatchPolicy(String set) {
+        return batchPolicies.computeIfAbsent(set, s -> applyProfile(new BatchPolicy(batchPolicy), s));
+    }
+
+    private <P extends Policy> P applyProfile(P policy, String set) {
+        AerospikePolicyProperties.Profile profile = policyProperties.getProfile(set);
+        if (profile != null) {
+            if (profile.getSocketTimeout() != null) {
+                policy.socketTimeout = profile.getSocketTimeout();
+            }
+            if (profile.getTotalTimeout() != null) {
+                policy.totalTimeout = profile.getTotalTimeout();
+            }
+            if (profile.getMaxRetries() != null) {
+                policy.maxRetries = profile.getMaxRetries();
+            }
+            if (profile.getSleepBetweenRetries() != null) {
+                policy.sleepBetweenRetries = profile.getSleepBetweenRetries();
+            }
+            if (profile.getReplica() != null) {
+                policy.replica = profile.getReplica();
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * The TTL new records of the set are cached with: it's sliding TTL if it has one, the given TTL otherwise.
+     */
+    public int getTtl(String set, int ttl) {
+        AerospikePolicyProperties.Profile profile = policyProperties.getProfile(set);
+        return profile != null && profile.getSlidingTtlSeconds() != null ? profile.getSlidingTtlSeconds() : ttl;
+    }
+
+    /**
+     * Whether this read of the key should reset it's TTL: the set has a sliding TTL, and the key wasn't touched by
+     * this java instance within the touchIntervalMillis of the set. Keys are only marked as touched once the touch
+     * succeeded (see markTouched), so a failed touch is retried by the next read.
+     */
+    private boolean shouldTouch(String set, String keyName) {
+        AerospikePolicyProperties.Profile profile = policyProperties.getProfile(set);
+        if (profile == null || profile.getSlidingTtlSeconds() == null) {
+            return false;
+        }
+        return recentlyTouched(set, profile).getIfPresent(keyName) == null;
+    }
+
+    private void markTouched(String set, String keyName) {
+        AerospikePolicyProperties.Profile profile = policyProperties.getProfile(set);
+        if (profile != null) {
+            recentlyTouched(set, profile).put(keyName, Boolean.TRUE);
+        }
+    }
+
+    private Cache<String, Boolean> recentlyTouched(String set, AerospikePolicyProperties.Profile profile) {
+        return recentlyTouched.computeIfAbsent(set, s -> Caffeine.newBuilder()
+                .expireAfterWrite(profile.getTouchIntervalMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(MAX_TOUCHED_KEYS)
+                .build());
+    }
+
+    /**
+     * Reads the bins and resets the TTL of the record to the sliding TTL of it's set, in a single operate round trip.
+     * Returns null if the record does not exist.
+     */
+    private Record touchAndGet(String set, Key key, String... bins) {
+        WritePolicy touchPolicy = new WritePolicy(getWritePolicy(set));
+        touchPolicy.expiration = getTtl(set, 0);
+        recordTouch(set);
+        try {
+            Record record = client.operate(touchPolicy, key, touchOperations(bins));
+            markTouched(set, key.userKey.toString());
+            return record;
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void recordTouch(String set) {
+        if (meterRegistry != null) {
+            meterRegistry.counter("aerospike.touches", "set", set).increment();
+        }
+    }
+
+    private static Operation[] touchOperations(String... bins) {
+        Operation[] operations = new Operation[Math.max(1, bins.length) + 1];
+        operations[0] = Operation.touch();
+        if (bins.length == 0) {
+            operations[1] = Operation.get();
+        }
+        for (int i = 0; i < bins.length; i++) {
+            operations[i + 1] = Operation.get(bins[i]);
+        }
+        return operations;
+    }
+
+    /**
+     * Reads the record with the policy of the set, hedging the read if it's profile asks so. Records of sets with a
+     * sliding TTL are touched by the read, at most once per touchIntervalMillis.
+     *
+     * A hedged read first goes to the master of the key, asynchronously, and the hedge to it's prole. Hedging needs
+     * cache.aerospike.async.enabled; without it, or when the key has no prole, the read is sent without a hedge.
+     */
+    private Record get(String set, Key key, String... bins) {
+        if (shouldTouch(set, key.userKey.toString())) {
+            return touchAndGet(set, key, bins);
+        }
+        Policy policy = getReadPolicy(set);
+        AerospikePolicyProperties.Profile profile = policyProperties.getProfile(set);
+        if (profile == null || !profile.isHedge() || hedgedReads == null || !isAsyncAvailable()) {
+            return get(policy, key, bins);
+        }
+        Node prole = hedgingClient.getProleNode(key);
+        if (prole == null) {
+            return get(policy, key, bins);
+        }
+        Policy primaryPolicy = hedgedReadPolicies.computeIfAbsent(set, s -> {
+            Policy primary = new Policy(policy);
+            primary.replica = Replica.SEQUENCE;
+            return primary;
+        });
+        return hedgedReads.read(set, profile, () -> getAsync(primaryPolicy, key, bins),
+                () -> hedgingClient.get(policy, key, prole, bins));
+    }
+
+    private Record get(Policy policy, Key key, String... bins) {
+        return bins.length == 0 ? client.get(policy, key) : client.get(policy, key, bins);
+    }
+
     public void write(String set, String keyName, String colName, String colValue) {
         Key key = new Key(getNameSpace(), set, keyName);
         Bin bin = new Bin(colName, colValue);
-        client.put(writePolicy, key, bin);
+        client.put(getWritePolicy(set), key, bin);
     }
 
     public void cache(String set, int ttl, String keyName, String colName, String colValue) {
         Key key = new Key(getNameSpace(), set, keyName);
         Bin bin = new Bin(colName, colValue);
-        WritePolicy writePolicy = getDefaultWritePolicy();
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
         writePolicy.expiration = ttl;
         client.put(writePolicy, key, bin);
 
@@ -57,11 +301,81 @@ public class AerospikeClientWrapper extends AerospikeConfig {
     public void cache(String set, int ttl, String keyName, String colName, Object colValue) {
         Key key = new Key(getNameSpace(), set, keyName);
         Bin bin = new Bin(colName, Value.getAsBlob(colValue));
-        WritePolicy writePolicy = getDefaultWritePolicy();
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
+        writePolicy.expiration = ttl;
+        client.put(writePolicy, key, bin);
+    }
+
+    public void cacheBytes(String set, int ttl, String keyName, String colName, byte[] colValue) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        Bin bin = new Bin(colName, colValue);
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
+        writePolicy.expiration = ttl;
+        client.put(writePolicy, key, bin);
+    }
+
+    /**
+     * Stores the fields as a CDT map in a single bin, so that they can later be read or updated one by one (see
+     * {@link #readFields} and {@link #updateField}).
+     */
+    public void cache(String set, int ttl, String keyName, String colName, Map<String, ?> fields) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        Bin bin = new Bin(colName, fields);
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
         writePolicy.expiration = ttl;
         client.put(writePolicy, key, bin);
     }
 
+    /**
+     * Reads only the given fields of the CDT map stored in the bin. Returns null if the record does not exist, and a
+     * (possibly partial) map of the fields that were found otherwise.
+     */
+    public Map<Object, Object> readFields(String set, String keyName, String colName, List<String> fieldNames) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        List<Value> fieldKeys = new ArrayList<>(fieldNames.size());
+        for (String fieldName : fieldNames) {
+            fieldKeys.add(Value.get(fieldName));
+        }
+        Record record = client.operate(getWritePolicy(set), key,
+                MapOperation.getByKeyList(colName, fieldKeys, MapReturnType.KEY_VALUE));
+        if (record == null) {
+            return null;
+        }
+        Object entries = record.getValue(colName);
+        Map<Object, Object> fields = new HashMap<>();
+        if (entries instanceof Map) {
+            fields.putAll((Map<?, ?>) entries);
+        } else if (entries instanceof List) {
+            for (Object entry : (List<?>) entries) {
+                Map.Entry<?, ?> field = (Map.Entry<?, ?>) entry;
+                fields.put(field.getKey(), field.getValue());
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Sets a single field of the CDT map stored in the bin, leaving the other fields and the TTL of the record as they
+     * are. Returns false if the record does not exist, as a partial record would then be cached.
+     */
+    public boolean updateField(String set, String keyName, String colName, String fieldName, Object fieldValue) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
+        writePolicy.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+        // -2 = keep the current TTL of the record
+        writePolicy.expiration = -2;
+        try {
+            client.operate(writePolicy, key, MapOperation.put(MapPolicy.Default, colName, Value.get(fieldName),
+                    Value.get(fieldValue)));
+            return true;
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
     public void write(String set, String keyName, Map<String, ? extends Object> binData) throws IOException {
         Key key = new Key(getNameSpace(), set, keyName);
         Bin[] bins = new Bin[binData.size()];
@@ -71,7 +385,7 @@ public class AerospikeClientWrapper extends AerospikeConfig {
             bins[array] = bin;
             array++;
         }
-        client.put(writePolicy, key, bins);
+        client.put(getWritePolicy(set), key, bins);
     }
 
     public void write(String set, String keyName, Map<String, ? extends Object> binData, int ttl) throws IOException {
@@ -83,49 +397,225 @@ public class AerospikeClientWrapper extends AerospikeConfig {
             bins[array] = bin;
             array++;
         }
-        WritePolicy writePolicy = getDefaultWritePolicy();
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
         writePolicy.expiration = ttl;
         client.put(writePolicy, key, bins);
     }
 
     public Record read(String set, String keyName) {
         Key key = new Key(getNameSpace(), set, keyName);
-        return client.get(readPolicy, key);
+        return get(set, key);
     }
 
     public boolean exists(String set, String keyName) {
         Key key = new Key(getNameSpace(), set, keyName);
-        return client.exists(readPolicy, key);
+        return client.exists(getReadPolicy(set), key);
     }
 
     public Record read(String set, String keyName, String bin) {
         Key key = new Key(getNameSpace(), set, keyName);
-        return client.get(readPolicy, key, bin);
+        return get(set, key, bin);
     }
 
     public Record[] read(String set, List<String> keyNames) {
         int size = keyNames.size();
         Key[] keys = new Key[size];
         for (int i = 0; i < size; i++) {
-            keys[i] = new Key(getNameSpace(), set, i + 1);
+            keys[i] = new Key(getNameSpace(), set, keyNames.get(i));
         }
-        return client.get(batchPolicy, keys);
+        return client.get(getBatchPolicy(set), keys);
+    }
+
+    /**
+     * Reads the given bin of all the keys in a single batch, sent to the nodes owning the keys in parallel (see
+     * cache.aerospike.batch.*). Records are returned in the order of the keys, with null for keys that were not found.
+     */
+    public Record[] read(String set, List<String> keyNames, String bin) {
+        Key[] keys = new Key[keyNames.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(getNameSpace(), set, keyNames.get(i));
+        }
+        return client.get(getBatchPolicy(set), keys, bin);
     }
 
     public Record read(String set, String keyName, String[] binArray) {
         Key key = new Key(getNameSpace(), set, keyName);
-        return client.get(readPolicy, key, binArray);
+        return get(set, key, binArray);
     }
 
     public void delete(String set, String keyName) {
         Key key = new Key(getNameSpace(), set, keyName);
-        client.delete(writePolicy, key);
+        client.delete(getWritePolicy(set), key);
+    }
+
+    /**
+     * Deletes every record of the set, on all nodes of the cluster.
+     */
+    public void truncate(String set) {
+        client.truncate(null, getNameSpace(), set, null);
+    }
+
+    public CompletableFuture<Record> readAsync(String set, String keyName, String bin) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        CompletableFuture<Record> future = new CompletableFuture<>();
+        RecordListener listener = recordListener(future);
+        if (shouldTouch(set, keyName)) {
+            WritePolicy touchPolicy = new WritePolicy(getWritePolicy(set));
+            touchPolicy.expiration = getTtl(set, 0);
+            recordTouch(set);
+            RecordListener touchListener = new RecordListener() {
+                @Override
+                public void onSuccess(Key key, Record record) {
+                    markTouched(set, keyName);
+                    listener.onSuccess(key, record);
+                }
+
+                @Override
+                public void onFailure(AerospikeException e) {
+                    listener.onFailure(e);
+                }
+            };
+            submitAsync(future, () -> client.operate(eventLoops.next(), touchListener, touchPolicy, key,
+                    touchOperations(bin)));
+        } else {
+            submitAsync(future, () -> client.get(eventLoops.next(), listener, getReadPolicy(set), key, bin));
+        }
+        return future;
+    }
+
+    private CompletableFuture<Record> getAsync(Policy policy, Key key, String... bins) {
+        CompletableFuture<Record> future = new CompletableFuture<>();
+        RecordListener listener = recordListener(future);
+        if (bins.length == 0) {
+            submitAsync(future, () -> client.get(eventLoops.next(), listener, policy, key));
+        } else {
+            submitAsync(future, () -> client.get(eventLoops.next(), listener, policy, key, bins));
+        }
+        return future;
+    }
+
+    private RecordListener recordListener(CompletableFuture<Record> future) {
+        return new RecordListener() {
+            @Override
+            public void onSuccess(Key key, Record record) {
+                complete(future, record);
+            }
+
+            @Override
+            public void onFailure(AerospikeException e) {
+                if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR) {
+                    // Only a touch fails on a missing record. Plain reads succeed with a null record
+                    complete(future, null);
+                } else {
+                    fail(future, e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the given bin of all the keys in a single batch command. Records are returned in the order of the keys, with
+     * null for keys that were not found.
+     */
+    public CompletableFuture<Record[]> readAsync(String set, List<String> keyNames, String bin) {
+        Key[] keys = new Key[keyNames.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(getNameSpace(), set, keyNames.get(i));
+        }
+        CompletableFuture<Record[]> future = new CompletableFuture<>();
+        submitAsync(future, () -> client.get(eventLoops.next(), new RecordArrayListener() {
+            @Override
+            public void onSuccess(Key[] keys, Record[] records) {
+                complete(future, records);
+            }
+
+            @Override
+            public void onFailure(AerospikeException e) {
+                fail(future, e);
+            }
+        }, getBatchPolicy(set), keys, bin));
+        return future;
+    }
+
+    public CompletableFuture<Void> cacheAsync(String set, int ttl, String keyName, String colName, String colValue) {
+        return cacheAsync(set, ttl, keyName, new Bin(colName, colValue));
+    }
+
+    public CompletableFuture<Void> cacheAsync(String set, int ttl, String keyName, String colName, Map<String, ?> fields) {
+        return cacheAsync(set, ttl, keyName, new Bin(colName, fields));
+    }
+
+    public CompletableFuture<Void> cacheBytesAsync(String set, int ttl, String keyName, String colName, byte[] colValue) {
+        return cacheAsync(set, ttl, keyName, new Bin(colName, colValue));
+    }
+
+    private CompletableFuture<Void> cacheAsync(String set, int ttl, String keyName, Bin bin) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        WritePolicy writePolicy = new WritePolicy(getWritePolicy(set));
+        writePolicy.expiration = ttl;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        submitAsync(future, () -> client.put(eventLoops.next(), new WriteListener() {
+            @Override
+            public void onSuccess(Key key) {
+                complete(future, null);
+            }
+
+            @Override
+            public void onFailure(AerospikeException e) {
+                fail(future, e);
+            }
+        }, writePolicy, key, bin));
+        return future;
+    }
+
+    public CompletableFuture<Boolean> deleteAsync(String set, String keyName) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        submitAsync(future, () -> client.delete(eventLoops.next(), new DeleteListener() {
+            @Override
+            public void onSuccess(Key key, boolean existed) {
+                complete(future, existed);
+            }
+
+            @Override
+            public void onFailure(AerospikeException e) {
+                fail(future, e);
+            }
+        }, getWritePolicy(set), key));
+        return future;
+    }
+
+    private void submitAsync(CompletableFuture<?> future, Runnable command) {
+        if (!isAsyncAvailable()) {
+            future.completeExceptionally(new IllegalStateException("Aerospike async client is not enabled"));
+            return;
+        }
+        asyncInFlight.incrementAndGet();
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            // Eg: a command rejected by a full queue, or failing before it reaches the event loop
+            fail(future, e);
+        }
+    }
+
+    private <T> void complete(CompletableFuture<T> future, T value) {
+        asyncInFlight.decrementAndGet();
+        future.complete(value);
+    }
+
+    private void fail(CompletableFuture<?> future, RuntimeException e) {
+        asyncInFlight.decrementAndGet();
+        if (e instanceof AerospikeException.AsyncQueueFull) {
+            asyncRejected.increment();
+        }
+        future.completeExceptionally(e);
     }
 
     public Record increment(String set, String keyName, String binName) {
         Key key = new Key(getNameSpace(), set, keyName);
         Bin bin = new Bin(binName, 1);
-        return client.operate(writePolicy, key, Operation.add(bin));
+        return client.operate(getWritePolicy(set), key, Operation.add(bin));
     }
 
     public Record multiOps(String set, String keyName, Operation[] operations) {
@@ -133,5 +623,10 @@ public class AerospikeClientWrapper extends AerospikeConfig {
         return client.operate(null, key, operations);
     }
 
+    public Record multiOps(String set, String keyName, WritePolicy policy, Operation[] operations) {
+        Key key = new Key(getNameSpace(), set, keyName);
+        return client.operate(policy, key, operations);
+    }
+
 }
 
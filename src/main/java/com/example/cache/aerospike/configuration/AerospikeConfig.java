@@ -1,6 +1,7 @@
 package com.example.cache.aerospike.configuration;
 
 import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.async.EventPolicy;
 import com.aerospike.client.policy.*;
 import org.springframework.beans.factory.annotation.Value;
 
@@ -33,6 +34,26 @@ public class AerospikeConfig {
     @Value(value="${cache.aerospike.asyncMaxCommands}")
     private  int          asyncMaxCommands ;
 
+    // Number of nodes a batch is sent to in parallel. 0 = all nodes at once, 1 = one node after the other
+    @Value(value="${cache.aerospike.batch.maxConcurrentThreads:0}")
+    private  int          batchMaxConcurrentThreads ;
+
+    // Whether a node processes it's keys of a batch inline on the receiving thread, or spreads them over it's service
+    // threads. Inline is faster for in-memory namespaces, spreading for keys on SSD
+    @Value(value="${cache.aerospike.batch.allowInline:true}")
+    private  boolean      batchAllowInline ;
+
+    @Value(value="${cache.aerospike.async.enabled:false}")
+    private  boolean      asyncEnabled ;
+
+    // Number of NIO event loops (selector threads). 0 = one per available processor
+    @Value(value="${cache.aerospike.async.eventLoops:0}")
+    private  int          asyncEventLoops ;
+
+    // Commands waiting for one of the asyncMaxCommands slots. Beyond this, commands are rejected
+    @Value(value="${cache.aerospike.async.maxCommandsInQueue:5000}")
+    private  int          asyncMaxCommandsInQueue ;
+
     @Value(value="${cache.aerospike.log.enabled}")
     protected boolean      logEnabled ;
 
@@ -52,6 +73,8 @@ public class AerospikeConfig {
     protected BatchPolicy getDefaultBatchPolicy() {
         batchPolicy = new BatchPolicy();
         batchPolicy.totalTimeout = timeOut;
+        batchPolicy.maxConcurrentThreads = batchMaxConcurrentThreads;
+        batchPolicy.allowInline = batchAllowInline;
         return batchPolicy;
     }
 
@@ -88,6 +111,21 @@ public class AerospikeConfig {
         asyncClientPolicy.asyncReadPolicyDefault = getDefaultQueryPolicy();
     }
 
+    /**
+     * The asyncMaxCommands are split across the event loops, as each loop enforces it's own limit. Commands over the
+     * limit wait in the loop's queue, bounded to it's share of asyncMaxCommandsInQueue.
+     */
+    protected EventPolicy getEventPolicy(int eventLoops) {
+        EventPolicy eventPolicy = new EventPolicy();
+        eventPolicy.maxCommandsInProcess = Math.max(1, (asyncMaxCommands + eventLoops - 1) / eventLoops);
+        eventPolicy.maxCommandsInQueue = Math.max(1, (asyncMaxCommandsInQueue + eventLoops - 1) / eventLoops);
+        return eventPolicy;
+    }
+
+    protected int getAsyncEventLoopCount() {
+        return asyncEventLoops > 0 ? asyncEventLoops : Runtime.getRuntime().availableProcessors();
+    }
+
     public ClientPolicy getClientPolicy() {
         return clientPolicy;
     }
@@ -132,6 +170,14 @@ public class AerospikeConfig {
         return asyncMaxCommands;
     }
 
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public int getAsyncMaxCommandsInQueue() {
+        return asyncMaxCommandsInQueue;
+    }
+
     public boolean isLogEnabled() {
         return logEnabled;
     }
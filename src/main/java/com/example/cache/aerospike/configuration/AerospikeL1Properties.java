@@ -0,0 +1,34 @@
+package com.example.cache.aerospike.configuration;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the in-process L1 cache in front of Aerospike. Eg:
+ *
+ *      cache.aerospike.l1.enabled=true
+ *      cache.aerospike.l1.maximumSize=10000
+ *      cache.aerospike.l1.defaultTtlMillis=30000
+ *      cache.aerospike.l1.setTtlMillis.rating=60000
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.aerospike.l1")
+public class AerospikeL1Properties {
+
+    private boolean enabled;
+    // Max number of records held. Least valuable records are evicted first (W-TinyLFU)
+    private long maximumSize = 10000;
+    // Time to live of records of sets without a TTL of their own
+    private long defaultTtlMillis = 30000;
+    // Time to live of records, per set
+    private Map<String, Long> setTtlMillis = new HashMap<>();
+
+    public long getTtlMillis(String set) {
+        return setTtlMillis.getOrDefault(set, defaultTtlMillis);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.cache.aerospike.configuration;
+
+import com.aerospike.client.policy.Replica;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named policy profiles, and the profile of each set. Sets without a profile use the global policies built from
+ * cache.aerospike.timeOut. Eg:
+ *
+ *      cache.aerospike.policy.profiles.fast.socketTimeout=50
+ *      cache.aerospike.policy.profiles.fast.totalTimeout=200
+ *      cache.aerospike.policy.profiles.fast.maxRetries=2
+ *      cache.aerospike.policy.profiles.fast.sleepBetweenRetries=0
+ *      cache.aerospike.policy.profiles.fast.replica=SEQUENCE
+ *      cache.aerospike.policy.profiles.fast.hedge=true
+ *      cache.aerospike.policy.profiles.fast.slidingTtlSeconds=3600
+ *      cache.aerospike.policy.sets.rating=fast
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "cache.aerospike.policy")
+public class AerospikePolicyProperties {
+
+    private Map<String, Profile> profiles = new HashMap<>();
+    // Set -> name of it's profile
+    private Map<String, String> sets = new HashMap<>();
+    // Max threads running hedged reads, across all sets. Reads over this limit are sent without a hedge
+    private int hedgeThreads = 64;
+
+    /**
+     * The profile of the set, or null if it uses the global policies.
+     */
+    public Profile getProfile(String set) {
+        String name = sets.get(set);
+        return name != null ? profiles.get(name) : null;
+    }
+
+    /**
+     * Settings left unset keep the value of the global policies.
+     */
+    @Data
+    public static class Profile {
+        // Max time of a single attempt. Once it elapses, the command is retried if the total timeout allows it
+        private Integer socketTimeout;
+        // Max time of the whole command, all retries included
+        private Integer totalTimeout;
+        private Integer maxRetries;
+        private Integer sleepBetweenRetries;
+        // Node(s) reads are sent to: MASTER, MASTER_PROLES, SEQUENCE (master, then prole on retry) or RANDOM
+        private Replica replica;
+        // Send a second read when the first one is slower than the usual (p95) read of the set. The first to answer
+        // wins. The first read goes to the master of the key, the second one to it's prole. Needs cache.aerospike.async
+        private boolean hedge;
+        // Bounds of the delay before hedging. The max is also used until enough reads were timed to know the p95
+        private long hedgeMinDelayMillis = 1;
+        private long hedgeMaxDelayMillis = 50;
+        // Sliding expiration: records are cached with this TTL, and reads reset it. Unset = fixed cache.aerospike.ttl
+        private Integer slidingTtlSeconds;
+        // A key's TTL is reset at most once per interval, so hot records don't turn every read into a write
+        private long touchIntervalMillis = 60000;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.cache.aerospike.configuration;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Record;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Hedged reads: a read that takes longer than the p95 of the reads of it's set is sent a second time, to another
+ * replica, and whichever answers first is returned. A single slow node then costs a few milliseconds of the p95
+ * instead of the whole timeout, for about 5% more reads.
+ *
+ * The first read is sent asynchronously, on the event loops, while the caller waits for it for up to the p95. Only the
+ * hedge, when one is sent, runs on a thread of the hedging pool.
+ *
+ * The p95 is taken from the latencies of the first attempts only, over the last few minutes, so it follows the load.
+ * Counts of the hedges sent and won are exported as aerospike.hedge.reads (result=sent|won), tagged with the set.
+ */
+class HedgedReads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgedReads.class);
+
+    // Reads to time before the p95 is trusted
+    private static final long MIN_TIMED_READS = 100;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ThreadPoolExecutor executor;
+    private final MeterRegistry registry;
+    private final Map<String, SetStats> stats = new ConcurrentHashMap<>();
+
+    HedgedReads(int threads, MeterRegistry registry) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "aerospike-hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Keeps the latency percentiles available when there is no registry to export to
+        this.registry = registry != null ? registry : new SimpleMeterRegistry();
+    }
+
+    Record read(String set, AerospikePolicyProperties.Profile profile, Supplier<CompletableFuture<Record>> primary,
+                Supplier<Record> hedge) {
+        SetStats setStats = stats.computeIfAbsent(set, SetStats::new);
+        Attempts attempts = new Attempts();
+        long start = System.nanoTime();
+        primary.get().whenComplete((record, error) -> {
+            if (error == null) {
+                setStats.latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                attempts.result.complete(record);
+            } else {
+                attempts.failed(error, false);
+            }
+        });
+        try {
+            long delay = setStats.getHedgeDelayMillis(profile);
+            try {
+                return attempts.result.get(delay, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                attempts.pending.incrementAndGet();
+                try {
+                    executor.execute(() -> attempts.hedge(hedge, setStats));
+                    setStats.hedgesSent.increment();
+                } catch (RejectedExecutionException rejected) {
+                    // All hedging threads are busy: wait for the first read alone
+                    attempts.notSent();
+                }
+                return attempts.result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AerospikeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AerospikeException) {
+                throw (AerospikeException) e.getCause();
+            }
+            throw new AerospikeException(e.getCause());
+        }
+    }
+
+    /**
+     * The attempts of a single read. The first attempt to succeed completes the result. It only fails once every
+     * attempt that was sent has failed.
+     */
+    private static final class Attempts {
+        private final CompletableFuture<Record> result = new CompletableFuture<>();
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicReference<Throwable> lastError = new AtomicReference<>();
+
+        void hedge(Supplier<Record> read, SetStats setStats) {
+            try {
+                if (result.complete(read.get())) {
+                    setStats.hedgesWon.increment();
+                }
+            } catch (RuntimeException e) {
+                failed(e, true);
+            }
+        }
+
+        void failed(Throwable error, boolean isHedge) {
+            lastError.set(error);
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            } else {
+                LOG.debug("{} read failed while another one is pending - {}", isHedge ? "Hedged" : "First",
+                        error.getMessage());
+            }
+        }
+
+        /**
+         * The hedge counted as pending could not be sent. Fails the result if the first read has failed meanwhile.
+         */
+        void notSent() {
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(lastError.get());
+            }
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private final class SetStats {
+        private final Timer latency;
+        private final Counter hedgesSent;
+        private final Counter hedgesWon;
+        private volatile long hedgeDelayMillis = -1;
+        private volatile long hedgeDelayComputedAt;
+
+        SetStats(String set) {
+            Tags tags = Tags.of("set", set);
+            latency = Timer.builder("aerospike.read.latency")
+                    .tags(tags)
+                    .publishPercentiles(0.95)
+                    .register(registry);
+            hedgesSent = Counter.builder("aerospike.hedge.reads").tags(tags.and("result", "sent")).register(registry);
+            hedgesWon = Counter.builder("aerospike.hedge.reads").tags(tags.and("result", "won")).register(registry);
+        }
+
+        /**
+         * The p95 of the reads, bounded by the profile. Recomputed at most once a second, as snapshots aren't free.
+         */
+        long getHedgeDelayMillis(AerospikePolicyProperties.Profile profile) {
+            long now = System.nanoTime();
+            if (hedgeDelayMillis < 0 || now - hedgeDelayComputedAt > DELAY_REFRESH_NANOS) {
+                long p95 = profile.getHedgeMaxDelayMillis();
+                if (latency.count() >= MIN_TIMED_READS) {
+                    for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+                        p95 = (long) Math.ceil(percentile.value(TimeUnit.MILLISECONDS));
+                    }
+                }
+                hedgeDelayMillis = Math.max(profile.getHedgeMinDelayMillis(),
+                        Math.min(profile.getHedgeMaxDelayMillis(), p95));
+                hedgeDelayComputedAt = now;
+            }
+            return hedgeDelayMillis;
+        }
+    }
+}
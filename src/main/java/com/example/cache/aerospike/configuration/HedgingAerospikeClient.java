@@ -0,0 +1,48 @@
+package com.example.cache.aerospike.configuration;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.Host;
+import com.aerospike.client.Key;
+import com.aerospike.client.Record;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.cluster.Partition;
+import com.aerospike.client.cluster.Partitions;
+import com.aerospike.client.command.ReadCommand;
+import com.aerospike.client.policy.ClientPolicy;
+import com.aerospike.client.policy.Policy;
+
+/**
+ * AerospikeClient that can also read a key from it's prole (first replica after the master), so that a hedged read is
+ * sure to reach another node than the first read, which goes to the master. None of the replica policies of the client
+ * can do that: MASTER_PROLES and RANDOM pick the master again for about half of the reads.
+ */
+class HedgingAerospikeClient extends AerospikeClient {
+
+    HedgingAerospikeClient(ClientPolicy policy, Host... hosts) {
+        super(policy, hosts);
+    }
+
+    /**
+     * The active prole node of the key, or null if the namespace keeps a single copy of it's records.
+     */
+    Node getProleNode(Key key) {
+        Partition partition = new Partition(key);
+        Partitions partitions = cluster.partitionMap.get(partition.namespace);
+        if (partitions == null || partitions.replicas.length < 2) {
+            return null;
+        }
+        Node node = partitions.replicas[1].get(partition.partitionId);
+        return node != null && node.isActive() ? node : null;
+    }
+
+    /**
+     * Reads the bins (all of them if none are given) of the key from the given node. Retries of the policy go to the
+     * same node. Returns null if the record does not exist.
+     */
+    Record get(Policy policy, Key key, Node node, String... bins) {
+        ReadCommand command = new ReadCommand(policy, key, bins.length == 0 ? null : bins);
+        // Without a key, the command is sent to the given node instead of the one picked by the replica policy
+        command.execute(cluster, policy, null, node, true);
+        return command.getRecord();
+    }
+}
@@ -1,13 +1,26 @@
 package com.example.cache.aerospike.controller;
 
 import com.example.cache.aerospike.model.Rating;
+import com.example.cache.aerospike.model.RatingScore;
 import com.example.cache.aerospike.repository.RatingRepository;
-import com.example.cache.aerospike.services.AerospikeCacheServiceImpl;
+import com.example.cache.aerospike.services.IAerospikeCacheService;
+import com.example.cache.aerospike.services.RatingIngestion;
 import com.fasterxml.jackson.core.type.TypeReference;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -18,7 +31,14 @@ public class RatingController {
     private RatingRepository ratingRepository;
 
     @Autowired
-    private AerospikeCacheServiceImpl aerospikeCacheService;
+    private MongoTemplate mongoTemplate;
+
+    // The L1AerospikeCacheService when the in-process L1 is enabled, the plain AerospikeCacheServiceImpl otherwise
+    @Autowired
+    private IAerospikeCacheService aerospikeCacheService;
+
+    @Autowired
+    private RatingIngestion ratingIngestion;
 
     @GetMapping(value = "/rating/{id}")
     public Rating getRating(@PathVariable String id){
@@ -32,10 +52,69 @@ public class RatingController {
         return rating;
     }
 
+    /**
+     * Ratings of all the ids, in the same order. Cached ones are read in a single batch, and only the rest from db.
+     */
+    @GetMapping(value = "/ratings")
+    public List<Rating> getRatings(@RequestParam List<String> ids){
+        List<Rating> ratings = aerospikeCacheService.getAll("ratings", "rating", ids, "config",
+                new TypeReference<Rating>(){});
+        List<String> missingIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (ratings.get(i) == null) {
+                missingIds.add(ids.get(i));
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            log.info("Fetch {} of {} ratings from db", missingIds.size(), ids.size());
+            Map<String, Rating> loaded = new HashMap<>();
+            ratingRepository.findAllById(missingIds).forEach(rating -> loaded.put(rating.getId(), rating));
+            for (int i = 0; i < ids.size(); i++) {
+                Rating rating = loaded.get(ids.get(i));
+                if (ratings.get(i) == null && rating != null) {
+                    ratings.set(i, rating);
+                    aerospikeCacheService.put(rating.getId(), "rating", rating.getId(), "config", rating);
+                }
+            }
+        }
+        return ratings;
+    }
+
+    /**
+     * Saves the fields owned by clients. The count and sum of the scores are only ever updated by the ingestion: the
+     * ones of the request are ignored, and the rating returned and cached is the stored one, with it's current
+     * counters.
+     */
     @PostMapping("/rating")
     public Rating saveRating(@RequestBody Rating rating){
-        ratingRepository.save(rating);
-        return rating;
+        Rating saved;
+        if (rating.getId() == null) {
+            rating.setCount(null);
+            rating.setSum(null);
+            saved = ratingRepository.save(rating);
+        } else {
+            saved = mongoTemplate.findAndModify(new Query(Criteria.where("_id").is(rating.getId())),
+                    new Update().set("rating", rating.getRating()),
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), Rating.class);
+        }
+        aerospikeCacheService.put(saved.getId(),"rating",saved.getId(),"config",saved);
+        return saved;
+    }
+
+    /**
+     * Accepts a batch of scores, which are aggregated in memory and flushed to db and aerospike on an interval.
+     * Returns the number of scores accepted.
+     */
+    @PostMapping("/rating/batch")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public int ingestRatings(@RequestBody List<RatingScore> scores){
+        for (RatingScore score : scores) {
+            if (score.getId() == null || score.getId().isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every score needs a rating id");
+            }
+        }
+        ratingIngestion.ingest(scores);
+        return scores.size();
     }
 
 }
@@ -11,4 +11,7 @@ public class Rating {
 
     private String id;
     private String rating;
+    // Number and sum of the scores ingested through /rating/batch
+    private Long count;
+    private Long sum;
 }
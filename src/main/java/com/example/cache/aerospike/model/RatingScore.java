@@ -0,0 +1,17 @@
+package com.example.cache.aerospike.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A single score submitted for a rating, as ingested by /rating/batch.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RatingScore {
+
+    private String id;
+    private long score;
+}
@@ -3,18 +3,36 @@ package com.example.cache.aerospike.services;
 import com.aerospike.client.AerospikeException;
 import com.aerospike.client.Record;
 import com.example.cache.aerospike.configuration.AerospikeClientWrapper;
+import com.example.cache.compression.CompressionStats;
+import com.example.cache.compression.ValueCompression;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service("cacheService")
 public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
@@ -25,11 +43,39 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
     @Value("${cache.aerospike.enabled}")
     private boolean isCacheOn;
 
+    // How objects are stored in their bin: 'json' = a JSON string, 'map' = a CDT map of their fields
+    @Value("${cache.aerospike.objectStorage:json}")
+    private String objectStorage;
+
+    // JSON values of at least this many bytes are stored compressed. 0 = never
+    @Value("${cache.aerospike.compressionThresholdBytes:0}")
+    private int compressionThreshold;
+
+    // Threads decoding the values of async reads, so that the event loops only do network I/O. 0 = one per processor
+    @Value("${cache.aerospike.async.decodeThreads:0}")
+    private int decodeThreads;
+
     @Autowired
     private AerospikeClientWrapper aeroWrapper;
 
+    // Unbounded queue: at most asyncMaxCommands + maxCommandsInQueue reads are in flight to feed it
+    private ExecutorService decodeExecutor;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, CompressionStats> compressionStats = new ConcurrentHashMap<>();
+
     private static final Logger LOG = LoggerFactory.getLogger(AerospikeCacheServiceImpl.class);
 
+    public static final String STORAGE_MAP = "map";
+
+    // Header of compressed JSON values, stored as blobs: [ZSTD_JSON][zstd frame of the UTF-8 JSON]
+    public static final byte ZSTD_JSON = 1;
+
+    // Shared, since reads and writes of the map storage and the batch reads convert many values per call
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
     @Autowired
     public AerospikeCacheServiceImpl(AerospikeClientWrapper aeroWrapper) {
         if (isCacheOn) {
@@ -37,6 +83,22 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
         }
     }
 
+    @PostConstruct
+    public void init() {
+        int threads = decodeThreads > 0 ? decodeThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        decodeExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "aerospike-decode-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        decodeExecutor.shutdownNow();
+    }
+
     @Override
     public Object get(String broker,String set, String key, TypeReference typeReference) {
         try {
@@ -50,11 +112,7 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
                         while (itr.hasNext()) {
                             Map.Entry pairs = (Map.Entry) itr.next();
                             String binName = (String) pairs.getKey();
-                            String value = (String) pairs.getValue();
-                            ObjectMapper mapper = new ObjectMapper();
-                            JsonNode jsonObject = mapper.readValue(value, JsonNode.class);
-                            Object object = mapper.convertValue(jsonObject, typeReference);
-                            map.put(binName, object);
+                            map.put(binName, decode(pairs.getValue(), typeReference));
                         }
                     }
                     return map;
@@ -78,18 +136,34 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
 
     @Override
     public void put(String broker,String set, String key, String binName, Object value) {
+        tryPut(broker, set, key, binName, value);
+    }
+
+    @Override
+    public boolean tryPut(String broker, String set, String key, String binName, Object value) {
         try {
             if (isCacheOn) {
-                ObjectMapper mapper = new ObjectMapper();
-
-                aeroWrapper.cache(set, cacheTtl, key, binName, mapper.valueToTree(value).toString());
+                JsonNode tree = MAPPER.valueToTree(value);
+                // The sliding TTL of the set, if it has one
+                int ttl = aeroWrapper.getTtl(set, cacheTtl);
+                if (isMapStorage(tree)) {
+                    aeroWrapper.cache(set, ttl, key, binName, toFields(tree));
+                } else {
+                    byte[] compressed = compressJson(set, tree.toString());
+                    if (compressed != null) {
+                        aeroWrapper.cacheBytes(set, ttl, key, binName, compressed);
+                    } else {
+                        aeroWrapper.cache(set, ttl, key, binName, tree.toString());
+                    }
+                }
+                return true;
             }else
                 LOG.info("Aerospike cache is off");
         }
         catch (Exception e) {
             LOG.error("Encountered exception in putting record in cache - {}",e);
         }
-
+        return false;
     }
 
     @Override
@@ -146,7 +220,8 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
             if (isCacheOn) {
                 Record record = aeroWrapper.read(set, key);
                 if (record != null) {
-                    return record.getValue(bin);
+                    Object value = record.getValue(bin);
+                    return isCompressedJson(value) ? toJson(value) : value;
                 }
             }
         }
@@ -169,6 +244,20 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
         return false;
     }
 
+    @Override
+    public boolean truncate(String broker, String set) {
+        if (!isCacheOn) {
+            return false;
+        }
+        try {
+            aeroWrapper.truncate(set);
+            return true;
+        } catch (AerospikeException e) {
+            LOG.error("Error truncating set {}: ", set, e);
+            return false;
+        }
+    }
+
     private boolean delete(String set, String key) {
         try {
             aeroWrapper.delete(set, key);
@@ -189,11 +278,7 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
                 Record record = aeroWrapper.read(set, key, bin);
                 LOG.info("record is :{}",record);
                 if (null != record && null != record.getValue(bin)) {
-                    final Record finalRecord = record;
-                    String string = finalRecord.getValue(bin).toString();
-                    ObjectMapper mapper = new ObjectMapper();
-                    JsonNode jsonObject = mapper.readValue(string, JsonNode.class);
-                    return mapper.convertValue(jsonObject, typeReference);
+                    return decode(record.getValue(bin), typeReference);
                 }
             }else
                 LOG.info("Aerospike cache is off");
@@ -203,5 +288,233 @@ public class AerospikeCacheServiceImpl implements IAerospikeCacheService {
         }
         return null;
     }
-}
 
+    @Override
+    public CompletableFuture<Object> getAsync(String id, String set, String key, String bin, TypeReference typeReference) {
+        if (!isCacheOn) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!aeroWrapper.isAsyncAvailable()) {
+            return CompletableFuture.completedFuture(get(id, set, key, bin, typeReference));
+        }
+        return aeroWrapper.readAsync(set, key, bin)
+                .thenApplyAsync(record -> toObject(record, bin, typeReference), decodeExecutor)
+                .exceptionally(e -> {
+                    LOG.error("Encountered exception while getting data from cache async - {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<Object>> getAllAsync(String id, String set, List<String> keys, String bin,
+                                                       TypeReference typeReference) {
+        if (!isCacheOn || keys.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>(Collections.nCopies(keys.size(), null)));
+        }
+        if (!aeroWrapper.isAsyncAvailable()) {
+            return CompletableFuture.completedFuture(getAll(id, set, keys, bin, (TypeReference<Object>) typeReference));
+        }
+        return aeroWrapper.readAsync(set, keys, bin)
+                .thenApplyAsync(records -> decodeAll(records, bin, typeReference), decodeExecutor)
+                .exceptionally(e -> {
+                    LOG.error("Encountered exception while batch getting data from cache async - {}", e.getMessage());
+                    return new ArrayList<>(Collections.nCopies(keys.size(), null));
+                });
+    }
+
+    @Override
+    public <T> List<T> getAll(String id, String set, List<String> keys, String bin, TypeReference<T> typeReference) {
+        try {
+            if (isCacheOn && !keys.isEmpty()) {
+                return decodeAll(aeroWrapper.read(set, keys, bin), bin, typeReference);
+            }
+        }
+        catch (Exception e) {
+            LOG.error("Encountered exception while batch getting data from cache - {}", e.getMessage());
+        }
+        return new ArrayList<>(Collections.nCopies(keys.size(), null));
+    }
+
+    /**
+     * Decodes the bin of all the records with a single reader, instead of a new ObjectMapper per record. Records that
+     * are missing or fail to parse decode to null, keeping the values in the order of the records.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> decodeAll(Record[] records, String bin, TypeReference typeReference) {
+        ObjectReader reader = MAPPER.readerFor(typeReference);
+        List<T> values = new ArrayList<>(records.length);
+        for (Record record : records) {
+            Object value = record != null ? record.getValue(bin) : null;
+            T decoded = null;
+            if (value != null) {
+                try {
+                    decoded = (T) (value instanceof Map ? MAPPER.convertValue(value, typeReference)
+                            : reader.readValue(toJson(value)));
+                }
+                catch (Exception e) {
+                    LOG.error("Unable to parse cached value of bin {} - {}", bin, e.getMessage());
+                }
+            }
+            values.add(decoded);
+        }
+        return values;
+    }
+
+    private Object toObject(Record record, String bin, TypeReference typeReference) {
+        if (record == null || record.getValue(bin) == null) {
+            return null;
+        }
+        try {
+            return decode(record.getValue(bin), typeReference);
+        }
+        catch (Exception e) {
+            LOG.error("Unable to parse cached value of bin {} - {}", bin, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String broker, String set, String key, String binName, Object value) {
+        if (!isCacheOn) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!aeroWrapper.isAsyncAvailable()) {
+            put(broker, set, key, binName, value);
+            return CompletableFuture.completedFuture(null);
+        }
+        JsonNode tree = MAPPER.valueToTree(value);
+        int ttl = aeroWrapper.getTtl(set, cacheTtl);
+        CompletableFuture<Void> write;
+        if (isMapStorage(tree)) {
+            write = aeroWrapper.cacheAsync(set, ttl, key, binName, toFields(tree));
+        } else {
+            byte[] compressed = compressJson(set, tree.toString());
+            write = compressed != null ? aeroWrapper.cacheBytesAsync(set, ttl, key, binName, compressed)
+                    : aeroWrapper.cacheAsync(set, ttl, key, binName, tree.toString());
+        }
+        return write
+                .exceptionally(e -> {
+                    LOG.error("Encountered exception in putting record in cache async - {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(String broker, String set, String key) {
+        if (!isCacheOn) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (!aeroWrapper.isAsyncAvailable()) {
+            return CompletableFuture.completedFuture(delete(broker, set, key));
+        }
+        return aeroWrapper.deleteAsync(set, key)
+                .thenApply(existed -> true)
+                .exceptionally(e -> {
+                    LOG.error("Error deleting record from cache async - {}", e.getMessage());
+                    return false;
+                });
+    }
+
+    @Override
+    public Map<String, Object> getFields(String id, String set, String key, String bin, List<String> fields) {
+        try {
+            if (isCacheOn) {
+                if (STORAGE_MAP.equals(objectStorage)) {
+                    Map<Object, Object> found = aeroWrapper.readFields(set, key, bin, fields);
+                    if (found != null) {
+                        Map<String, Object> values = new HashMap<>();
+                        found.forEach((field, value) -> values.put(String.valueOf(field), value));
+                        return values;
+                    }
+                    return null;
+                }
+                // A JSON string can only be read whole
+                Record record = aeroWrapper.read(set, key, bin);
+                if (record != null && record.getValue(bin) != null) {
+                    Map<String, Object> all = MAPPER.readValue(toJson(record.getValue(bin)),
+                            new TypeReference<Map<String, Object>>() {});
+                    Map<String, Object> values = new HashMap<>();
+                    for (String field : fields) {
+                        if (all.containsKey(field)) {
+                            values.put(field, all.get(field));
+                        }
+                    }
+                    return values;
+                }
+            }
+        }
+        catch (Exception e) {
+            LOG.error("Encountered exception while getting fields from cache - {}", e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public boolean updateField(String broker, String set, String key, String bin, String field, Object value) {
+        try {
+            if (isCacheOn) {
+                if (STORAGE_MAP.equals(objectStorage)) {
+                    Object fieldValue = value != null ? MAPPER.convertValue(value, Object.class) : null;
+                    return aeroWrapper.updateField(set, key, bin, field, fieldValue);
+                }
+                // A JSON string can not be updated in place. Drop it, to be cached again on the next read
+                delete(set, key);
+            }
+        }
+        catch (Exception e) {
+            LOG.error("Encountered exception while updating field {} in cache - {}", field, e.getMessage());
+            delete(set, key);
+        }
+        return false;
+    }
+
+    private boolean isMapStorage(JsonNode tree) {
+        return STORAGE_MAP.equals(objectStorage) && tree.isObject();
+    }
+
+    private static Map<String, Object> toFields(JsonNode tree) {
+        return MAPPER.convertValue(tree, new TypeReference<Map<String, Object>>() {});
+    }
+
+    /**
+     * Values are stored either as a CDT map of their fields, read back as a Map, or as a JSON string. Both are read
+     * whatever the current objectStorage, so switching it does not require dropping the cached data.
+     */
+    private static Object decode(Object stored, TypeReference typeReference) throws IOException {
+        if (stored instanceof Map) {
+            return MAPPER.convertValue(stored, typeReference);
+        }
+        return MAPPER.readerFor(typeReference).readValue(toJson(stored));
+    }
+
+    /**
+     * Returns the compressed JSON to store instead of the string, or null if it is below the threshold or does not
+     * compress. Sizes are recorded per set either way, and exported as aerospike.compression.*.
+     */
+    private byte[] compressJson(String set, String json) {
+        byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+        CompressionStats stats = compressionStats.computeIfAbsent(set,
+                s -> new CompressionStats().register(meterRegistry, "aerospike", Tags.of("set", s)));
+        return ValueCompression.compress(ZSTD_JSON, utf8, 0, utf8.length, compressionThreshold, stats);
+    }
+
+    private static boolean isCompressedJson(Object stored) {
+        return stored instanceof byte[] && ((byte[]) stored).length > 0 && ((byte[]) stored)[0] == ZSTD_JSON;
+    }
+
+    /**
+     * The JSON of a stored value, which is either a plain string or compressed. Both coexist, whatever the current
+     * compressionThreshold.
+     */
+    private static String toJson(Object stored) {
+        if (isCompressedJson(stored)) {
+            return new String(ValueCompression.decompress((byte[]) stored), StandardCharsets.UTF_8);
+        }
+        return stored.toString();
+    }
+
+    public CompressionStats getCompressionStats(String set) {
+        return compressionStats.get(set);
+    }
+}
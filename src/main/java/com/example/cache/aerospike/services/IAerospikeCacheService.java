@@ -2,7 +2,9 @@ package com.example.cache.aerospike.services;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface IAerospikeCacheService {
 
@@ -35,6 +37,14 @@ public interface IAerospikeCacheService {
      */
     boolean delete(String broker,String set, String key);
 
+    /**
+     * Delete every record of the given set. Returns whether the truncation was accepted by the cluster
+     *
+     * @param set
+     * @return
+     */
+    boolean truncate(String broker, String set);
+
     /**
      * Get the data from cache from given set, given key and bin - returns passed Object
      *
@@ -46,6 +56,44 @@ public interface IAerospikeCacheService {
      */
     Object get(String id,String set, String key, String bin, TypeReference typeReference);
 
+    /**
+     * Get the values of the given bin for all the keys in a single batch read. Values are returned in the order of the
+     * keys, with null for the keys that were not found
+     *
+     * @param set
+     * @param keys
+     * @param bin
+     * @param typeReference
+     * @return
+     */
+    <T> List<T> getAll(String id, String set, List<String> keys, String bin, TypeReference<T> typeReference);
+
+    /**
+     * Get only the given fields of the object cached in the bin, without reading and decoding the whole object when
+     * cache.aerospike.objectStorage=map. Returns null if the key is not found. Field values are returned as stored
+     * (Eg: Long for all integers, Map for nested objects)
+     *
+     * @param set
+     * @param key
+     * @param bin
+     * @param fields
+     * @return
+     */
+    Map<String, Object> getFields(String id, String set, String key, String bin, List<String> fields);
+
+    /**
+     * Update a single field of the object cached in the bin, in place when cache.aerospike.objectStorage=map. Otherwise
+     * the cached object is deleted, as are objects that fail to update. Returns whether the field was updated
+     *
+     * @param set
+     * @param key
+     * @param bin
+     * @param field
+     * @param value
+     * @return
+     */
+    boolean updateField(String broker, String set, String key, String bin, String field, Object value);
+
     /**
      * Put the data map to cache for given set, given key and bin
      *
@@ -65,6 +113,18 @@ public interface IAerospikeCacheService {
      */
     void put(String broker,String set, String key, String binName, Object value);
 
+    /**
+     * Same as {@link #put(String, String, String, String, Object)}, but returns whether the value was cached instead of
+     * only logging the failure. Returns false when the cache is off
+     *
+     * @param set
+     * @param key
+     * @param binName
+     * @param value
+     * @return
+     */
+    boolean tryPut(String broker, String set, String key, String binName, Object value);
+
     /**
      * Put the data to cache for given set, given key and bin for custom ttl
      *
@@ -97,4 +157,51 @@ public interface IAerospikeCacheService {
      * @param value
      */
     void put(String broker,String set, int ttl, String key, String binName, String value);
+
+    /**
+     * Async variant of {@link #get(String, String, String, String, TypeReference)}. Completes with null when the key is
+     * not found or the read fails. Runs on the event loops when cache.aerospike.async.enabled, otherwise on the caller
+     * thread. The value is decoded, and dependent stages run, on the decode executor, off the event loops
+     *
+     * @param set
+     * @param key
+     * @param bin
+     * @param typeReference
+     * @return
+     */
+    CompletableFuture<Object> getAsync(String id, String set, String key, String bin, TypeReference typeReference);
+
+    /**
+     * Async batch get of the given bin of all the keys. Completes with the values in the order of the keys, with null
+     * for the keys that were not found
+     *
+     * @param set
+     * @param keys
+     * @param bin
+     * @param typeReference
+     * @return
+     */
+    CompletableFuture<List<Object>> getAllAsync(String id, String set, List<String> keys, String bin,
+                                                TypeReference typeReference);
+
+    /**
+     * Async variant of {@link #put(String, String, String, String, Object)}. Completes once the write is done, whether it
+     * succeeded or not
+     *
+     * @param set
+     * @param key
+     * @param binName
+     * @param value
+     * @return
+     */
+    CompletableFuture<Void> putAsync(String broker, String set, String key, String binName, Object value);
+
+    /**
+     * Async variant of {@link #delete(String, String, String)}
+     *
+     * @param set
+     * @param key
+     * @return
+     */
+    CompletableFuture<Boolean> deleteAsync(String broker, String set, String key);
 }
@@ -0,0 +1,393 @@
+package com.example.cache.aerospike.services;
+
+import com.example.cache.aerospike.configuration.AerospikeL1Properties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * In-process L1 cache in front of Aerospike, so that hot records are served from memory instead of a network call.
+ *
+ * Records are held per set and key, each with the values read from it (per bin and requested type). The L1 is bounded
+ * to maximumSize records, with Caffeine's W-TinyLFU admission keeping the most frequently read ones, and records
+ * expire after the TTL of their set. Any put or delete through this service drops the record from the L1.
+ *
+ * The L1 of each java instance is only invalidated by it's own writes, so writes made elsewhere are seen once the
+ * record expires: keep the TTL of a set within how stale it's data may be.
+ *
+ * A read that started before a write of the same record may complete after it, with the overwritten value. So every
+ * invalidation bumps a write generation of the record, and a read only fills the L1 if the generation is still the one
+ * it saw before reading. Generations are kept in a fixed number of stripes shared by all records, so a write to
+ * another record of the same stripe only costs an extra miss.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "cache.aerospike.l1.enabled", havingValue = "true")
+public class L1AerospikeCacheService implements IAerospikeCacheService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(L1AerospikeCacheService.class);
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    @Autowired
+    @Qualifier("cacheService")
+    private IAerospikeCacheService aerospike;
+
+    @Autowired
+    private AerospikeL1Properties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // set+key -> (bin + requested type) -> value
+    private Cache<RecordKey, Map<String, Object>> records;
+
+    // Write generations of the records, per stripe of RecordKey hashes
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        records = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfter(new Expiry<RecordKey, Map<String, Object>>() {
+                    @Override
+                    public long expireAfterCreate(RecordKey key, Map<String, Object> value, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(properties.getTtlMillis(key.set));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(RecordKey key, Map<String, Object> value, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(RecordKey key, Map<String, Object> value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        if (meterRegistry != null) {
+            CaffeineCacheMetrics.monitor(meterRegistry, records, "aerospike.l1");
+        }
+        LOG.info("Aerospike L1 cache enabled with maximumSize {} and TTLs {} (default {}ms)",
+                properties.getMaximumSize(), properties.getSetTtlMillis(), properties.getDefaultTtlMillis());
+    }
+
+    @Override
+    public Object get(String broker, String set, String key, TypeReference<? extends Object> typeReference) {
+        return getCached(set, key, "*|" + typeReference.getType(), () -> aerospike.get(broker, set, key, typeReference));
+    }
+
+    @Override
+    public Object get(String broker, String set, String key, String bin) {
+        return getCached(set, key, bin, () -> aerospike.get(broker, set, key, bin));
+    }
+
+    @Override
+    public Object get(String id, String set, String key, String bin, TypeReference typeReference) {
+        return getCached(set, key, bin + "|" + typeReference.getType(),
+                () -> aerospike.get(id, set, key, bin, typeReference));
+    }
+
+    @Override
+    public CompletableFuture<Object> getAsync(String id, String set, String key, String bin, TypeReference typeReference) {
+        String valueKey = bin + "|" + typeReference.getType();
+        Object value = getIfPresent(set, key, valueKey);
+        if (value != null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        RecordKey recordKey = new RecordKey(set, key);
+        long readGeneration = generation(recordKey);
+        return aerospike.getAsync(id, set, key, bin, typeReference).thenApply(read -> {
+            cacheValue(recordKey, valueKey, read, readGeneration);
+            return read;
+        });
+    }
+
+    /**
+     * Serves the keys found in the L1, and reads the rest from Aerospike in a single batch.
+     */
+    @Override
+    public CompletableFuture<List<Object>> getAllAsync(String id, String set, List<String> keys, String bin,
+                                                       TypeReference typeReference) {
+        String valueKey = bin + "|" + typeReference.getType();
+        List<Object> values = new ArrayList<>(keys.size());
+        List<String> missingKeys = new ArrayList<>();
+        long[] readGenerations = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            Object value = getIfPresent(set, keys.get(i), valueKey);
+            values.add(value);
+            if (value == null) {
+                missingKeys.add(keys.get(i));
+                readGenerations[i] = generation(new RecordKey(set, keys.get(i)));
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return CompletableFuture.completedFuture(values);
+        }
+        return aerospike.getAllAsync(id, set, missingKeys, bin, typeReference).thenApply(read -> {
+            int next = 0;
+            for (int i = 0; i < values.size(); i++) {
+                if (values.get(i) == null) {
+                    Object value = read.get(next++);
+                    cacheValue(new RecordKey(set, keys.get(i)), valueKey, value, readGenerations[i]);
+                    values.set(i, value);
+                }
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Serves the keys found in the L1, and reads the rest from Aerospike in a single batch.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getAll(String id, String set, List<String> keys, String bin, TypeReference<T> typeReference) {
+        String valueKey = bin + "|" + typeReference.getType();
+        List<T> values = new ArrayList<>(keys.size());
+        List<String> missingKeys = new ArrayList<>();
+        long[] readGenerations = new long[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            T value = (T) getIfPresent(set, keys.get(i), valueKey);
+            values.add(value);
+            if (value == null) {
+                missingKeys.add(keys.get(i));
+                readGenerations[i] = generation(new RecordKey(set, keys.get(i)));
+            }
+        }
+        if (missingKeys.isEmpty()) {
+            return values;
+        }
+        List<T> read = aerospike.getAll(id, set, missingKeys, bin, typeReference);
+        int next = 0;
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == null) {
+                T value = read.get(next++);
+                cacheValue(new RecordKey(set, keys.get(i)), valueKey, value, readGenerations[i]);
+                values.set(i, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the value from the L1, reading it from Aerospike on a miss. Values that aren't found in Aerospike are not
+     * cached.
+     */
+    private Object getCached(String set, String key, String valueKey, Supplier<Object> reader) {
+        Object value = getIfPresent(set, key, valueKey);
+        if (value != null) {
+            return value;
+        }
+        RecordKey recordKey = new RecordKey(set, key);
+        long readGeneration = generation(recordKey);
+        value = reader.get();
+        cacheValue(recordKey, valueKey, value, readGeneration);
+        return value;
+    }
+
+    private Object getIfPresent(String set, String key, String valueKey) {
+        Map<String, Object> values = records.getIfPresent(new RecordKey(set, key));
+        return values != null ? values.get(valueKey) : null;
+    }
+
+    /**
+     * Puts the value read into the L1, unless the record has been written since the read began (readGeneration). The
+     * generation is checked while holding the entry, so an invalidation can't slip in between the check and the put.
+     */
+    private void cacheValue(RecordKey key, String valueKey, Object value, long readGeneration) {
+        if (value == null) {
+            return;
+        }
+        records.asMap().compute(key, (k, values) -> {
+            if (generation(k) != readGeneration) {
+                return values;
+            }
+            Map<String, Object> cached = values != null ? values : new ConcurrentHashMap<>();
+            cached.put(valueKey, value);
+            return cached;
+        });
+    }
+
+    private long generation(RecordKey key) {
+        return generations.get(stripe(key));
+    }
+
+    private static int stripe(RecordKey key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    @Override
+    public boolean delete(String broker, String set, String key) {
+        try {
+            return aerospike.delete(broker, set, key);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    /**
+     * Drops every record of the set from the L1, and bumps every write generation, so that no read already running can
+     * put one of them back.
+     */
+    @Override
+    public boolean truncate(String broker, String set) {
+        try {
+            return aerospike.truncate(broker, set);
+        } finally {
+            for (int i = 0; i < GENERATION_STRIPES; i++) {
+                generations.incrementAndGet(i);
+            }
+            records.asMap().keySet().removeIf(recordKey -> recordKey.set.equals(set));
+        }
+    }
+
+    @Override
+    public void put(String broker, String set, String key, Map<String, ? extends Object> dataMap) {
+        try {
+            aerospike.put(broker, set, key, dataMap);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    @Override
+    public void put(String broker, String set, String key, String binName, Object value) {
+        try {
+            aerospike.put(broker, set, key, binName, value);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    @Override
+    public boolean tryPut(String broker, String set, String key, String binName, Object value) {
+        try {
+            return aerospike.tryPut(broker, set, key, binName, value);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    @Override
+    public void put(String broker, String set, int ttl, String key, String binName, Object value) {
+        try {
+            aerospike.put(broker, set, ttl, key, binName, value);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    @Override
+    public boolean put(String broker, String set, String key, Map<String, ? extends Object> dataMap, int ttl) {
+        try {
+            return aerospike.put(broker, set, key, dataMap, ttl);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    @Override
+    public void put(String broker, String set, int ttl, String key, String binName, String value) {
+        try {
+            aerospike.put(broker, set, ttl, key, binName, value);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    /**
+     * Partial reads are not cached in the L1, as they are cheap in Aerospike already.
+     */
+    @Override
+    public Map<String, Object> getFields(String id, String set, String key, String bin, List<String> fields) {
+        return aerospike.getFields(id, set, key, bin, fields);
+    }
+
+    @Override
+    public boolean updateField(String broker, String set, String key, String bin, String field, Object value) {
+        try {
+            return aerospike.updateField(broker, set, key, bin, field, value);
+        } finally {
+            invalidate(set, key);
+        }
+    }
+
+    /**
+     * The record is dropped from the L1 both before the write, and once it completes. Reads that started before the
+     * write completed don't fill the L1 anymore, see cacheValue.
+     */
+    @Override
+    public CompletableFuture<Void> putAsync(String broker, String set, String key, String binName, Object value) {
+        invalidate(set, key);
+        return aerospike.putAsync(broker, set, key, binName, value).whenComplete((r, e) -> invalidate(set, key));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteAsync(String broker, String set, String key) {
+        invalidate(set, key);
+        return aerospike.deleteAsync(broker, set, key).whenComplete((r, e) -> invalidate(set, key));
+    }
+
+    /**
+     * Drops the record from the L1 of this java instance, and keeps reads already running from putting it back.
+     */
+    public void invalidate(String set, String key) {
+        RecordKey recordKey = new RecordKey(set, key);
+        generations.incrementAndGet(stripe(recordKey));
+        records.invalidate(recordKey);
+    }
+
+    private static final class RecordKey {
+        private final String set;
+        private final String key;
+
+        RecordKey(String set, String key) {
+            this.set = set;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) o;
+            return set.equals(other.set) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(set, key);
+        }
+    }
+}
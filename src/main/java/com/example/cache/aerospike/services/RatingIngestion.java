@@ -0,0 +1,231 @@
+package com.example.cache.aerospike.services;
+
+import com.aerospike.client.Bin;
+import com.aerospike.client.Operation;
+import com.aerospike.client.policy.WritePolicy;
+import com.example.cache.aerospike.configuration.AerospikeClientWrapper;
+import com.example.cache.aerospike.model.Rating;
+import com.example.cache.aerospike.model.RatingScore;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ingestion of rating scores at high rates.
+ *
+ * Scores are not written one by one: they are summed per rating id in memory, and a scheduled flush sends the count
+ * and sum of each rating since the last flush, in one Mongo bulk write ($inc) and one operate (add) per rating to
+ * Aerospike. A burst of scores of the same rating thus costs one write per flush interval on each backend.
+ *
+ * The accumulators are striped, so threads adding scores to the same (hot) rating mostly update different cells. The
+ * flush drains each cell with getAndSet(0), without ever blocking the ingestion.
+ *
+ * Scores are kept in memory until flushed: the ones of the last interval are lost if the java instance crashes, as
+ * with any write-behind. A graceful shutdown flushes them.
+ */
+@Service
+public class RatingIngestion {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RatingIngestion.class);
+
+    private static final String SET = "rating";
+    private static final String CACHED_BIN = "config";
+    private static final String COUNT_BIN = "count";
+    private static final String SUM_BIN = "sum";
+    // Expiration of a write that keeps the TTL of the record (Aerospike server 3.10.1+)
+    private static final int KEEP_TTL = -2;
+
+    @Value("${rating.ingest.stripes:16}")
+    private int stripes;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private AerospikeClientWrapper aeroWrapper;
+
+    @Autowired
+    private IAerospikeCacheService aerospikeCacheService;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, Accumulator> accumulators = new ConcurrentHashMap<>();
+    private final LongAdder ingested = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            FunctionCounter.builder("rating.ingest.scores", ingested, LongAdder::sum).register(meterRegistry);
+            Gauge.builder("rating.ingest.ratings", accumulators, Map::size)
+                    .description("Ratings with scores accumulated since the last flush, or idle since then")
+                    .register(meterRegistry);
+        }
+    }
+
+    public void ingest(List<RatingScore> scores) {
+        for (RatingScore score : scores) {
+            add(score.getId(), 1, score.getScore());
+        }
+        ingested.add(scores.size());
+    }
+
+    private void add(String id, long count, long sum) {
+        while (!accumulators.computeIfAbsent(id, k -> new Accumulator(Math.max(1, stripes))).add(count, sum)) {
+            // Retired by the flush while we were adding. Retry on a new accumulator
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Sends the scores accumulated since the last flush to DB, and then to Aerospike. If the DB write fails, the scores
+     * are added back to the accumulators, to be retried at the next flush.
+     */
+    @Scheduled(fixedDelayString = "${rating.ingest.flushIntervalMillis:1000}")
+    public void flush() {
+        Map<String, long[]> totals = new HashMap<>();
+        Iterator<Map.Entry<String, Accumulator>> iterator = accumulators.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Accumulator> entry = iterator.next();
+            long[] drained = entry.getValue().drain();
+            if (drained[0] == 0 && drained[1] == 0) {
+                // Idle for a whole interval: drop it, so ids don't pile up in memory
+                iterator.remove();
+                drained = entry.getValue().retire();
+            }
+            if (drained[0] != 0 || drained[1] != 0) {
+                totals.put(entry.getKey(), drained);
+            }
+        }
+        if (totals.isEmpty()) {
+            return;
+        }
+
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Rating.class);
+        totals.forEach((id, total) -> operations.upsert(new Query(Criteria.where("_id").is(id)),
+                new Update().inc(COUNT_BIN, total[0]).inc(SUM_BIN, total[1])));
+        try {
+            operations.execute();
+        } catch (Exception e) {
+            LOG.error("Failed to flush scores of {} ratings to DB. Retrying at next flush", totals.size(), e);
+            totals.forEach((id, total) -> add(id, total[0], total[1]));
+            return;
+        }
+
+        if (aeroWrapper.getClient() == null) {
+            LOG.info("Flushed scores of {} ratings to DB only, aerospike is disabled", totals.size());
+            return;
+        }
+        // The counters are updated in place: they keep the TTL of the record instead of getting the default one
+        WritePolicy keepTtl = new WritePolicy(aeroWrapper.getWritePolicy(SET));
+        keepTtl.expiration = KEEP_TTL;
+        List<String> failed = new ArrayList<>();
+        totals.forEach((id, total) -> {
+            try {
+                // Same round trip: add to the live counters, and drop the cached rating, now behind DB
+                aeroWrapper.multiOps(SET, id, keepTtl, new Operation[] {
+                        Operation.add(new Bin(COUNT_BIN, total[0])),
+                        Operation.add(new Bin(SUM_BIN, total[1])),
+                        Operation.put(Bin.asNull(CACHED_BIN))});
+            } catch (Exception e) {
+                failed.add(id);
+            }
+        });
+        if (aerospikeCacheService instanceof L1AerospikeCacheService) {
+            totals.keySet().forEach(id -> ((L1AerospikeCacheService) aerospikeCacheService).invalidate(SET, id));
+        }
+        if (!failed.isEmpty()) {
+            LOG.error("Failed to add scores of {} ratings to aerospike, eg: {}. Their cached ratings stay stale until "
+                    + "they expire", failed.size(), failed.get(0));
+        }
+        LOG.info("Flushed scores of {} ratings", totals.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Count and sum of the scores of a single rating, striped over a few cells to spread concurrent adds. Each stripe
+     * is [count, sum, writers], where writers counts the adds in progress on it.
+     */
+    static final class Accumulator {
+
+        private final AtomicLongArray cells;
+        private final int stripes;
+        private volatile boolean retired;
+
+        Accumulator(int stripes) {
+            this.stripes = stripes;
+            this.cells = new AtomicLongArray(stripes * 3);
+        }
+
+        /**
+         * Returns false, without adding anything, if the accumulator was retired.
+         */
+        boolean add(long count, long sum) {
+            int stripe = (int) (Thread.currentThread().getId() % stripes) * 3;
+            cells.incrementAndGet(stripe + 2);
+            try {
+                if (retired) {
+                    return false;
+                }
+                cells.getAndAdd(stripe, count);
+                cells.getAndAdd(stripe + 1, sum);
+                return true;
+            } finally {
+                cells.decrementAndGet(stripe + 2);
+            }
+        }
+
+        /**
+         * Takes the count and sum added since the last drain. An add racing with the drain may have it's count taken
+         * now and it's sum at the next drain, which evens out across flushes.
+         */
+        long[] drain() {
+            long[] total = new long[2];
+            for (int stripe = 0; stripe < cells.length(); stripe += 3) {
+                total[0] += cells.getAndSet(stripe, 0);
+                total[1] += cells.getAndSet(stripe + 1, 0);
+            }
+            return total;
+        }
+
+        /**
+         * Refuses any further add, waits for the adds in progress, and drains what they added. Call once removed from
+         * the accumulators, so that new adds go to a new accumulator.
+         */
+        long[] retire() {
+            retired = true;
+            for (int stripe = 0; stripe < cells.length(); stripe += 3) {
+                while (cells.get(stripe + 2) != 0) {
+                    Thread.yield();
+                }
+            }
+            return drain();
+        }
+    }
+}
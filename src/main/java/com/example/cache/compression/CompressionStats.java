@@ -0,0 +1,67 @@
+package com.example.cache.compression;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sizes of the values written to a single cache, before and after compression.
+ */
+public class CompressionStats {
+
+    private final LongAdder values = new LongAdder();
+    private final LongAdder compressedValues = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+
+    /**
+     * Registers the stats as <prefix>.compression.* meters. The ratio gauge is raw bytes over stored bytes, so 3 means
+     * the values take a third of their uncompressed size.
+     */
+    public CompressionStats register(MeterRegistry registry, String prefix, Tags tags) {
+        if (registry != null) {
+            FunctionCounter.builder(prefix + ".compression.bytes", rawBytes, LongAdder::sum)
+                    .tags(tags.and("stage", "raw")).register(registry);
+            FunctionCounter.builder(prefix + ".compression.bytes", storedBytes, LongAdder::sum)
+                    .tags(tags.and("stage", "stored")).register(registry);
+            FunctionCounter.builder(prefix + ".compression.values", compressedValues, LongAdder::sum)
+                    .tags(tags).register(registry);
+            Gauge.builder(prefix + ".compression.ratio", this, CompressionStats::getRatio)
+                    .tags(tags).register(registry);
+        }
+        return this;
+    }
+
+    public void record(int rawLength, int storedLength, boolean compressed) {
+        values.increment();
+        rawBytes.add(rawLength);
+        storedBytes.add(storedLength);
+        if (compressed) {
+            compressedValues.increment();
+        }
+    }
+
+    public long getValues() {
+        return values.sum();
+    }
+
+    public long getCompressedValues() {
+        return compressedValues.sum();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    public double getRatio() {
+        long stored = storedBytes.sum();
+        return stored == 0 ? 1 : (double) rawBytes.sum() / stored;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.cache.compression;
+
+import com.github.luben.zstd.Zstd;
+
+import java.util.Arrays;
+
+/**
+ * Zstd compression of cached values, shared by the redis and aerospike caches.
+ *
+ * A compressed value is laid out as [header][zstd frame], where the header tells the backend's readers that the value
+ * is compressed. Values below the threshold, or that would not get smaller, are stored as they are, so compressed and
+ * uncompressed values coexist in the same cache: the threshold can be changed at any time without flushing it.
+ */
+public class ValueCompression {
+
+    // Fast level, on par with LZ4 on small JSON documents while compressing them noticeably better
+    private static final int LEVEL = 1;
+
+    private ValueCompression() { }
+
+    /**
+     * Compresses the length bytes of data at offset, prefixed with the header. Returns null if the value is below the
+     * threshold (0 = never compress), or would not get smaller. The outcome is recorded on the stats either way.
+     */
+    public static byte[] compress(byte header, byte[] data, int offset, int length, int threshold,
+                                  CompressionStats stats) {
+        if (threshold <= 0 || length < threshold) {
+            stats.record(length, length, false);
+            return null;
+        }
+        byte[] frame = Zstd.compress(Arrays.copyOfRange(data, offset, offset + length), LEVEL);
+        if (frame.length + 1 >= length) {
+            stats.record(length, length, false);
+            return null;
+        }
+        byte[] compressed = new byte[frame.length + 1];
+        compressed[0] = header;
+        System.arraycopy(frame, 0, compressed, 1, frame.length);
+        stats.record(length, compressed.length, true);
+        return compressed;
+    }
+
+    /**
+     * Decompresses a value written by {@link #compress}, skipping it's header.
+     */
+    public static byte[] decompress(byte[] compressed) {
+        int frameLength = compressed.length - 1;
+        // Negative when the frame is invalid, or doesn't record it's size (frames written by compress always do)
+        long size = Zstd.getFrameContentSize(compressed, 1, frameLength);
+        if (size <= 0 || size > Integer.MAX_VALUE) {
+            throw invalid(compressed, size);
+        }
+        byte[] data = new byte[(int) size];
+        long decompressed = Zstd.decompressByteArray(data, 0, data.length, compressed, 1, frameLength);
+        if (decompressed != size) {
+            throw invalid(compressed, decompressed);
+        }
+        return data;
+    }
+
+    private static IllegalArgumentException invalid(byte[] compressed, long result) {
+        String reason = Zstd.isError(result) ? Zstd.getErrorName(result) : "size " + result;
+        return new IllegalArgumentException("Invalid compressed cache value of " + compressed.length + " bytes: "
+                + reason);
+    }
+}
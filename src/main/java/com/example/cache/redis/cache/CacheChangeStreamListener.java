@@ -0,0 +1,280 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.redis.config.CacheConfiguration;
+import com.example.cache.redis.config.CacheEntityRegistry;
+import com.example.cache.redis.model.CacheConfig;
+import com.example.cache.redis.model.Versioned;
+import com.example.cache.routing.RoutingCacheManager;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.cache.redis.util.CacheUtil.getCacheMapName;
+
+/**
+ * Keeps the caches in sync with writes made to DB outside of this service, by following Mongo change streams.
+ *
+ * Every entity in the enabledEntities of the CacheConfig of the watched databases is followed on a thread of it's
+ * own, reading the change stream of the collection of the same name. Changes are applied to the matching cache in
+ * batches: deletes and inserts evict the key (inserts may replace a cached absence), updates of Versioned entities
+ * put the new version through RedisCache.putIfNewer, and other updates evict the key. Evictions of a batch go to
+ * redis in a single call, and the versioned puts of a batch run at the same time (see RedisCache.putAllIfNewer).
+ * Changes reach every tier of the cache, see RoutingCacheManager.
+ *
+ * Only one java instance follows each collection, the one holding it's redisson lock; the others stand by to take
+ * over. The resume token is stored in redis after each applied batch, so a restart (or the next instance taking over)
+ * resumes right after the last applied change. If the token has fallen out of the oplog, the cache is cleared and
+ * followed from the current point on.
+ *
+ * Change streams require Mongo to run as a replica set.
+ */
+@Slf4j
+@Component
+public class CacheChangeStreamListener implements ApplicationRunner, DisposableBean {
+
+    private static final String KEY_PREFIX = "cache:changestream:";
+    // ChangeStreamHistoryLost
+    private static final int HISTORY_LOST_CODE = 286;
+
+    @Value("${cache.redis.changeStreams.enabled:false}")
+    private boolean enabled;
+
+    @Value("${cache.redis.changeStreams.databases:}")
+    private List<String> databases;
+
+    @Value("${cache.redis.changeStreams.batchSize:100}")
+    private int batchSize;
+
+    // Max time to wait for more changes before applying a partial batch
+    @Value("${cache.redis.changeStreams.maxAwaitMillis:500}")
+    private long maxAwaitMillis;
+
+    @Value("${cache.redis.changeStreams.retryDelayMillis:10000}")
+    private long retryDelayMillis;
+
+    @Autowired
+    private CacheConfiguration cacheConfiguration;
+
+    @Autowired
+    private CacheEntityRegistry entityRegistry;
+
+    @Autowired
+    private RoutingCacheManager cacheManager;
+
+    @Autowired
+    private RedisClientWrapper redisClientWrapper;
+
+    @Autowired
+    private MongoClient mongoClient;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final List<Thread> followers = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean running = true;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        for (String database : databases) {
+            CacheConfig cacheConfig = cacheConfiguration.getCacheConfig(database);
+            if (cacheConfig == null || cacheConfig.getEnabledEntities() == null) {
+                log.error("No CacheConfig with enabledEntities for database {}. Not following it's changes", database);
+                continue;
+            }
+            for (String entity : cacheConfig.getEnabledEntities()) {
+                Thread follower = new Thread(() -> follow(database, entity),
+                        "cache-change-stream-" + getCacheMapName(database, entity));
+                follower.setDaemon(true);
+                follower.start();
+                followers.add(follower);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        followers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Follows the changes of the collection for as long as this instance holds it's lock, and retries to take the
+     * lock otherwise.
+     */
+    private void follow(String database, String entity) {
+        String cacheName = getCacheMapName(database, entity);
+        RLock lock = redisClientWrapper.getLock(KEY_PREFIX + cacheName + ":lock");
+        while (running) {
+            try {
+                if (lock.tryLock(retryDelayMillis, TimeUnit.MILLISECONDS)) {
+                    try {
+                        log.info("Following changes of {}.{} for {} cache", database, entity, cacheName);
+                        consume(database, entity, cacheName);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("[follow] Error following changes of {}.{}. Retrying in {}ms", database, entity,
+                        retryDelayMillis, e);
+                sleep(retryDelayMillis);
+            }
+        }
+    }
+
+    private void consume(String database, String entity, String cacheName) {
+        RBucket<String> resumeTokenBucket = redisClientWrapper.getBucket(KEY_PREFIX + cacheName + ":resumeToken");
+        ChangeStreamIterable<Document> changeStream = mongoClient.getDatabase(database).getCollection(entity).watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .batchSize(batchSize)
+                .maxAwaitTime(maxAwaitMillis, TimeUnit.MILLISECONDS);
+        String storedToken = resumeTokenBucket.get();
+        if (storedToken != null) {
+            changeStream = changeStream.resumeAfter(BsonDocument.parse(storedToken));
+        } else {
+            log.info("No resume token for {} cache. Following changes from now on", cacheName);
+        }
+
+        List<ChangeStreamDocument<Document>> batch = new ArrayList<>(batchSize);
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                // Waits up to maxAwaitMillis for the next change
+                ChangeStreamDocument<Document> change = cursor.tryNext();
+                if (change != null) {
+                    batch.add(change);
+                    if (batch.size() < batchSize) {
+                        continue;
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    boolean invalidated = apply(cacheName, batch);
+                    batch.clear();
+                    if (invalidated) {
+                        resumeTokenBucket.delete();
+                        return;
+                    }
+                }
+                // Only stored once everything up to it has been applied. Advances on idle streams too.
+                BsonDocument resumeToken = cursor.getResumeToken();
+                if (resumeToken != null) {
+                    String token = resumeToken.toJson();
+                    if (!token.equals(storedToken)) {
+                        resumeTokenBucket.set(token);
+                        storedToken = token;
+                    }
+                }
+            }
+        } catch (MongoCommandException e) {
+            if (e.getErrorCode() != HISTORY_LOST_CODE) {
+                throw e;
+            }
+            log.error("Resume token of {} cache is no longer in the oplog. Clearing the cache and following changes "
+                    + "from now on", cacheName, e);
+            resumeTokenBucket.delete();
+            cacheManager.clear(cacheName);
+        }
+    }
+
+    /**
+     * Applies a batch of changes to the cache. Returns true if the stream got invalidated (Eg: the collection was
+     * dropped or renamed), in which case the whole cache has been cleared.
+     */
+    private boolean apply(String cacheName, List<ChangeStreamDocument<Document>> changes) {
+        Class<?> classType = entityRegistry.getClassType(cacheName);
+        boolean versioned = classType != null && Versioned.class.isAssignableFrom(classType);
+        List<Object> evictions = new ArrayList<>();
+        // The last version of each updated key in the batch
+        Map<Object, Versioned> updates = new LinkedHashMap<>();
+        for (ChangeStreamDocument<Document> change : changes) {
+            switch (change.getOperationType()) {
+                case UPDATE:
+                case REPLACE:
+                    Document fullDocument = change.getFullDocument();
+                    if (versioned && fullDocument != null) {
+                        updates.put(toKey(change.getDocumentKey()),
+                                (Versioned) mongoTemplate.getConverter().read(classType, fullDocument));
+                    } else {
+                        evictions.add(toKey(change.getDocumentKey()));
+                    }
+                    break;
+                case INSERT:
+                case DELETE:
+                    Object key = toKey(change.getDocumentKey());
+                    // An update earlier in the batch must not put the key back after it was deleted
+                    updates.remove(key);
+                    evictions.add(key);
+                    break;
+                case DROP:
+                case RENAME:
+                case DROP_DATABASE:
+                case INVALIDATE:
+                    log.info("Change stream of {} cache got {}. Clearing the cache", cacheName,
+                            change.getOperationType());
+                    cacheManager.clear(cacheName);
+                    return true;
+                default:
+                    break;
+            }
+        }
+        if (!evictions.isEmpty()) {
+            cacheManager.evict(cacheName, evictions);
+        }
+        if (!updates.isEmpty()) {
+            cacheManager.putAllIfNewer(cacheName, updates);
+        }
+        log.info("Applied {} changes to {} cache: {} updates, {} evictions", changes.size(), cacheName, updates.size(),
+                evictions.size());
+        return false;
+    }
+
+    /**
+     * The cache key of a changed document. Cache keys are the string form of the document ids.
+     */
+    private static Object toKey(BsonDocument documentKey) {
+        BsonValue id = documentKey.get("_id");
+        if (id.isObjectId()) {
+            return id.asObjectId().getValue().toHexString();
+        }
+        if (id.isString()) {
+            return id.asString().getValue();
+        }
+        return id.toString();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.redis.model.CacheInvalidation;
+import com.example.cache.redis.repository.CacheInvalidationRepository;
+import com.example.cache.routing.RoutingCacheManager;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbox of failed cache invalidations.
+ *
+ * When an evict (or a put, which would leave the old value behind) fails, Eg: during a redis blip, the key is recorded
+ * in a Mongo collection instead of being left stale. clearInvalidCache retries the due entries in batches: the keys are
+ * grouped per cache, and each cache gets a single evict of all of it's keys. Entries that fail again are retried with
+ * exponential backoff, from baseBackoffMillis up to maxBackoffMillis.
+ *
+ * The outbox depth is exported as cache.redis.outbox.depth.
+ */
+@Slf4j
+@Component
+public class CacheCleaner {
+
+    private static final String CLEAR_ALL = "*";
+
+    @Value("${cache.redis.outbox.batchSize:1000}")
+    private int batchSize;
+
+    @Value("${cache.redis.outbox.baseBackoffMillis:5000}")
+    private long baseBackoffMillis;
+
+    @Value("${cache.redis.outbox.maxBackoffMillis:600000}")
+    private long maxBackoffMillis;
+
+    @Autowired
+    private CacheInvalidationRepository invalidationRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RoutingCacheManager cacheManager;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    // Refreshed after every retry run, so that the gauge doesn't query DB on every scrape
+    private final AtomicLong depth = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (meterRegistry != null) {
+            Gauge.builder("cache.redis.outbox.depth", depth, AtomicLong::get).register(meterRegistry);
+        }
+    }
+
+    /**
+     * Records a failed eviction of the key. A null key records a failed clear of the whole cache.
+     */
+    public void recordFailedEviction(String cacheName, Object key, Exception error) {
+        long now = System.currentTimeMillis();
+        String id = cacheName + ":" + (key != null ? key : CLEAR_ALL);
+        try {
+            Update update = new Update()
+                    .set("cacheName", cacheName)
+                    .set("key", key)
+                    .set("lastFailedAt", now)
+                    .set("lastError", String.valueOf(error))
+                    .setOnInsert("attempts", 0)
+                    .setOnInsert("nextAttemptAt", now + baseBackoffMillis);
+            UpdateResult result = mongoTemplate.upsert(new Query(Criteria.where("_id").is(id)), update,
+                    CacheInvalidation.class);
+            // A key failing again is already counted
+            if (result.getUpsertedId() != null) {
+                depth.incrementAndGet();
+            }
+            log.warn("Recorded failed invalidation of {} for retry", id);
+        } catch (Exception e) {
+            log.error("[recordFailedEviction] Error recording failed invalidation of {}. It will stay stale", id, e);
+        }
+    }
+
+    /**
+     * Retries all due invalidations, a batch at a time. Returns the number of invalidations that succeeded.
+     */
+    @Scheduled(fixedDelayString = "${cache.redis.outbox.retryIntervalMillis:10000}")
+    public int clearInvalidCache() {
+        int cleared = 0;
+        try {
+            List<CacheInvalidation> due;
+            do {
+                due = invalidationRepository.findByNextAttemptAtLessThanEqual(System.currentTimeMillis(),
+                        PageRequest.of(0, batchSize, Sort.by("nextAttemptAt")));
+                cleared += retry(due);
+            } while (due.size() == batchSize);
+            depth.set(invalidationRepository.count());
+        } catch (Exception e) {
+            log.error("[clearInvalidCache] Error retrying failed cache invalidations", e);
+        }
+        return cleared;
+    }
+
+    private int retry(List<CacheInvalidation> invalidations) {
+        if (invalidations.isEmpty()) {
+            return 0;
+        }
+        Map<String, List<CacheInvalidation>> byCache = new LinkedHashMap<>();
+        for (CacheInvalidation invalidation : invalidations) {
+            byCache.computeIfAbsent(invalidation.getCacheName(), name -> new ArrayList<>()).add(invalidation);
+        }
+
+        List<CacheInvalidation> succeeded = new ArrayList<>();
+        List<CacheInvalidation> failed = new ArrayList<>();
+        for (Map.Entry<String, List<CacheInvalidation>> entry : byCache.entrySet()) {
+            List<CacheInvalidation> pending = entry.getValue();
+            try {
+                List<Object> keys = new ArrayList<>(pending.size());
+                boolean clearAll = false;
+                for (CacheInvalidation invalidation : pending) {
+                    clearAll |= invalidation.getKey() == null;
+                    keys.add(invalidation.getKey());
+                }
+                if (clearAll) {
+                    cacheManager.clear(entry.getKey());
+                } else {
+                    cacheManager.evict(entry.getKey(), keys);
+                }
+                succeeded.addAll(pending);
+            } catch (Exception e) {
+                log.error("[retry] Error retrying {} invalidations of {} cache", pending.size(), entry.getKey(), e);
+                failed.addAll(pending);
+            }
+        }
+        long now = System.currentTimeMillis();
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CacheInvalidation.class);
+        for (CacheInvalidation invalidation : succeeded) {
+            // Unless the key failed again while it was being retried
+            operations.remove(new Query(Criteria.where("_id").is(invalidation.getId())
+                    .and("lastFailedAt").is(invalidation.getLastFailedAt())));
+        }
+        for (CacheInvalidation invalidation : failed) {
+            int attempts = invalidation.getAttempts() + 1;
+            operations.updateOne(new Query(Criteria.where("_id").is(invalidation.getId())),
+                    new Update().set("attempts", attempts).set("nextAttemptAt", now + backoff(attempts)));
+        }
+        operations.execute();
+        log.info("Retried {} failed cache invalidations: {} succeeded, {} failed", invalidations.size(),
+                succeeded.size(), failed.size());
+        return succeeded.size();
+    }
+
+    private long backoff(int attempts) {
+        return Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempts, 20));
+    }
+}
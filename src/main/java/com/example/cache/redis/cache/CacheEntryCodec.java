@@ -0,0 +1,76 @@
+package com.example.cache.redis.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Encoder;
+import org.redisson.codec.MarshallingCodec;
+
+import java.io.IOException;
+
+/**
+ * Redisson codec of the maps behind RedisCache. Values are already encoded by CacheValueCodecs, so they are stored as
+ * is, instead of being wrapped a second time by the default codec of the client (JBoss Marshalling). Keys keep the
+ * codec of the client, so that existing entries are still found.
+ *
+ * Values written before this codec are still read: with the default MarshallingCodec, they start with it's protocol
+ * version (4), which no CacheValueCodecs frame starts with, and are decoded through it, into the framed byte[] or
+ * legacy JSON string that RedisCache expects. They are replaced by plain frames as they get overwritten.
+ */
+class CacheEntryCodec extends BaseCodec {
+
+    private static final byte MARSHALLING_VERSION = 4;
+
+    private final Codec clientCodec;
+    private final boolean legacyMarshalling;
+
+    private final Encoder valueEncoder = this::encodeValue;
+    private final Decoder<Object> valueDecoder = this::decodeValue;
+
+    CacheEntryCodec(Codec clientCodec) {
+        this.clientCodec = clientCodec != null ? clientCodec : new MarshallingCodec();
+        this.legacyMarshalling = this.clientCodec instanceof MarshallingCodec;
+    }
+
+    private ByteBuf encodeValue(Object in) throws IOException {
+        if (!(in instanceof byte[])) {
+            return clientCodec.getMapValueEncoder().encode(in);
+        }
+        byte[] value = (byte[]) in;
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer(value.length);
+        out.writeBytes(value);
+        return out;
+    }
+
+    private Object decodeValue(ByteBuf buf, State state) throws IOException {
+        if (legacyMarshalling && buf.isReadable() && buf.getByte(buf.readerIndex()) == MARSHALLING_VERSION) {
+            return clientCodec.getMapValueDecoder().decode(buf, state);
+        }
+        byte[] value = new byte[buf.readableBytes()];
+        buf.readBytes(value);
+        return value;
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return valueDecoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return valueEncoder;
+    }
+
+    @Override
+    public Decoder<Object> getMapKeyDecoder() {
+        return clientCodec.getMapKeyDecoder();
+    }
+
+    @Override
+    public Encoder getMapKeyEncoder() {
+        return clientCodec.getMapKeyEncoder();
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.cache.redis.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScoredSortedSetAsync;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.client.protocol.ScoredEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps the local caches of freshly started java instances from starting out empty.
+ *
+ * While running, every instance periodically publishes the hottest keys of each of its caches (see HotKeyRecorder)
+ * to a sorted set in Redis, scored by read count. Scores are kept per time window, one sorted set per window, which
+ * expires once it is older than the number of windows kept. At startup, the scores of the kept windows are summed up,
+ * each window weighted down by the configured decay for every window it is older than the current one, so that keys
+ * which were hot a while ago but aren't anymore fade out. The top keys of the configured caches are then preloaded
+ * from central Redis into the local cache, in parallel batches, within a time budget. Warm-up reads are not counted
+ * as hot key reads.
+ *
+ * Warm-up runs as an ApplicationRunner, and spring only reports the application as ready to accept traffic
+ * (/actuator/health/readiness) once all runners are done. So the instance stays out of rotation until warm-up is
+ * finished or the budget runs out.
+ */
+@Component
+@Slf4j
+public class CacheWarmer implements ApplicationRunner {
+
+    private static final String HOT_KEYS_PREFIX = "cache:hotkeys:";
+
+    @Autowired
+    private RedisCacheManager cacheManager;
+
+    @Autowired
+    private RedisClientWrapper wrapper;
+
+    @Value("${cache.redis.hotKeys.enabled:true}")
+    private boolean hotKeysEnabled;
+
+    // Number of keys published per cache and instance on every flush
+    @Value("${cache.redis.hotKeys.topN:1000}")
+    private int topN;
+
+    // Max number of keys kept in each hot key set in Redis
+    @Value("${cache.redis.hotKeys.maxStoredKeys:5000}")
+    private int maxStoredKeys;
+
+    // Length of the time window hot key scores are collected over
+    @Value("${cache.redis.hotKeys.windowMillis:3600000}")
+    private long windowMillis;
+
+    // Number of windows kept and read back at warm-up
+    @Value("${cache.redis.hotKeys.windows:24}")
+    private int windows;
+
+    // Weight of the scores of a window, for each window it is older than the current one
+    @Value("${cache.redis.hotKeys.decay:0.5}")
+    private double decay;
+
+    @Value("${cache.redis.warmup.enabled:true}")
+    private boolean warmupEnabled;
+
+    @Value("${cache.redis.warmup.caches:}")
+    private List<String> warmupCaches;
+
+    @Value("${cache.redis.warmup.keys:5000}")
+    private int warmupKeys;
+
+    @Value("${cache.redis.warmup.batchSize:100}")
+    private int batchSize;
+
+    @Value("${cache.redis.warmup.parallelism:4}")
+    private int parallelism;
+
+    @Value("${cache.redis.warmup.budgetMillis:30000}")
+    private long budgetMillis;
+
+    /**
+     * Publishes the hottest keys read on this instance since the last flush to Redis.
+     */
+    @Scheduled(fixedDelayString = "${cache.redis.hotKeys.flushIntervalMillis:60000}")
+    public void flushHotKeys() {
+        if (!hotKeysEnabled) {
+            return;
+        }
+        for (Map.Entry<String, HotKeyRecorder> recorder : cacheManager.getHotKeyRecorders().entrySet()) {
+            Map<Object, Long> hotKeys = recorder.getValue().drainTop(topN);
+            if (hotKeys.isEmpty()) {
+                continue;
+            }
+            try {
+                RBatch batch = wrapper.createBatch();
+                RScoredSortedSetAsync<String> set = batch.getScoredSortedSet(
+                        windowKey(recorder.getKey(), currentWindow()), StringCodec.INSTANCE);
+                for (Map.Entry<Object, Long> hotKey : hotKeys.entrySet()) {
+                    set.addScoreAsync(hotKey.getKey().toString(), hotKey.getValue());
+                }
+                // Keep only the hottest keys, dropping the coldest ones
+                set.removeRangeByRankAsync(0, -(maxStoredKeys + 1));
+                set.expireAsync(windowMillis * windows, TimeUnit.MILLISECONDS);
+                batch.execute();
+                log.debug("Published {} hot keys for {} cache", hotKeys.size(), recorder.getKey());
+            } catch (Exception e) {
+                log.error("Failed to publish hot keys for {} cache", recorder.getKey(), e);
+            }
+        }
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!warmupEnabled || warmupCaches.isEmpty()) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            for (String cacheName : warmupCaches) {
+                warmUp(cacheName.trim(), executor, deadline);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void warmUp(String cacheName, ExecutorService executor, long deadline) {
+        long start = System.currentTimeMillis();
+        RedisCache cache = cacheManager.getCache(cacheName);
+        Collection<String> keys = readHotKeys(cacheName);
+        if (keys.isEmpty()) {
+            log.info("No hot keys recorded for {} cache. Skipping warm-up", cacheName);
+            return;
+        }
+
+        List<Future<Integer>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == batchSize) {
+                batches.add(submitBatch(cache, batch, executor));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(submitBatch(cache, batch, executor));
+        }
+
+        int loaded = 0;
+        for (Future<Integer> future : batches) {
+            try {
+                loaded += future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Failed to warm up a batch of {} cache", cacheName, e.getCause());
+            }
+        }
+        log.info("Warmed up {} cache with {} of {} hot keys in {} ms", cacheName, loaded, keys.size(),
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Returns the (at most) warmupKeys hottest keys of the cache, summing up the decayed scores of the kept windows.
+     */
+    private Collection<String> readHotKeys(String cacheName) {
+        long window = currentWindow();
+        Map<String, Double> scores = new HashMap<>();
+        double weight = 1;
+        for (int age = 0; age < windows; age++) {
+            RScoredSortedSet<String> hotKeySet = wrapper.getScoredSortedSet(windowKey(cacheName, window - age));
+            for (ScoredEntry<String> entry : hotKeySet.entryRangeReversed(0, warmupKeys - 1)) {
+                scores.merge(entry.getValue(), entry.getScore() * weight, Double::sum);
+            }
+            weight *= decay;
+        }
+        List<Map.Entry<String, Double>> hottest = new ArrayList<>(scores.entrySet());
+        hottest.sort(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()));
+        List<String> keys = new ArrayList<>(Math.min(warmupKeys, hottest.size()));
+        for (Map.Entry<String, Double> entry : hottest.subList(0, Math.min(warmupKeys, hottest.size()))) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    private long currentWindow() {
+        return System.currentTimeMillis() / windowMillis;
+    }
+
+    private static String windowKey(String cacheName, long window) {
+        return HOT_KEYS_PREFIX + cacheName + ":" + window;
+    }
+
+    private static Future<Integer> submitBatch(RedisCache cache, List<String> keys, ExecutorService executor) {
+        // warmUp fetches the keys missing locally from central Redis, and keeps them in the local cache
+        return executor.submit(() -> cache.warmUp(keys));
+    }
+}
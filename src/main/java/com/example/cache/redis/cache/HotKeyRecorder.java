@@ -0,0 +1,64 @@
+package com.example.cache.redis.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the reads of each key of a single RedisCache on this java instance, so that the hottest keys can be
+ * published to Redis and used to warm up the local caches of freshly started instances.
+ *
+ * Counts are collected over a window, which is reset every time the top keys are drained. To keep memory bounded,
+ * at most maxTrackedKeys distinct keys are counted per window; reads of other keys are ignored until the next window.
+ */
+public class HotKeyRecorder {
+
+    private final int maxTrackedKeys;
+    private volatile ConcurrentHashMap<Object, LongAdder> counts = new ConcurrentHashMap<>();
+
+    public HotKeyRecorder(int maxTrackedKeys) {
+        this.maxTrackedKeys = maxTrackedKeys;
+    }
+
+    public void record(Object key) {
+        ConcurrentHashMap<Object, LongAdder> window = counts;
+        LongAdder count = window.get(key);
+        if (count == null) {
+            if (window.size() >= maxTrackedKeys) {
+                return;
+            }
+            count = window.computeIfAbsent(key, k -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Returns the (at most) n most read keys of the current window with their read counts, hottest first, and starts
+     * a new window.
+     */
+    public Map<Object, Long> drainTop(int n) {
+        ConcurrentHashMap<Object, LongAdder> window = counts;
+        counts = new ConcurrentHashMap<>();
+
+        PriorityQueue<Map.Entry<Object, Long>> top = new PriorityQueue<>(n + 1, Map.Entry.comparingByValue());
+        for (Map.Entry<Object, LongAdder> entry : window.entrySet()) {
+            top.offer(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue().sum()));
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<Object, Long>> hottest = new ArrayList<>(top);
+        hottest.sort(Map.Entry.<Object, Long>comparingByValue(Comparator.reverseOrder()));
+        Map<Object, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<Object, Long> entry : hottest) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+}
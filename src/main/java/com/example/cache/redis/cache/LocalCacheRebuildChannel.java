@@ -0,0 +1,174 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.redis.config.CacheConfiguration;
+import com.example.cache.redis.dto.LocalCacheRebuildAck;
+import com.example.cache.redis.dto.LocalCacheRebuildMessage;
+import com.example.cache.redis.dto.LocalCacheRebuildResult;
+import com.example.cache.redis.util.JsonUtil;
+import com.example.cache.routing.RoutingCacheManager;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Control channel used to delete and rebuild local caches on ALL java instances, while leaving the central cached
+ * data intact. This is what allows new LocalCachedMapConfig settings to be rolled out without restarts.
+ *
+ * A rebuild is broadcast on a redis topic that every instance subscribes to at startup. Each instance drops the named
+ * local caches, recreates the ones it was using with freshly read configs, and publishes an ack on a second topic.
+ * The caller waits for as many acks as there were subscribers to receive the broadcast.
+ */
+@Component
+@Slf4j
+public class LocalCacheRebuildChannel {
+
+    private static final String REBUILD_TOPIC = "cache:control:rebuild";
+    private static final String ACK_TOPIC = "cache:control:rebuild:ack";
+
+    @Autowired
+    private RedisClientWrapper wrapper;
+
+    @Autowired
+    private RoutingCacheManager routingCacheManager;
+
+    @Autowired
+    private CacheConfiguration cacheConfiguration;
+
+    @Value("${cache.redis.rebuild.ackTimeoutMillis:10000}")
+    private long ackTimeoutMillis;
+
+    private final String instanceId = resolveInstanceId();
+
+    // Rebuilds triggered from this instance that are still waiting for acks
+    private final ConcurrentHashMap<String, LocalCacheRebuildResult> pendingRebuilds = new ConcurrentHashMap<>();
+
+    // Rebuilds create new RLocalCachedMaps, which must not be done from the redisson listener threads
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "local-cache-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private RTopic rebuildTopic;
+    private RTopic ackTopic;
+
+    @PostConstruct
+    public void subscribe() {
+        rebuildTopic = wrapper.getTopic(REBUILD_TOPIC);
+        ackTopic = wrapper.getTopic(ACK_TOPIC);
+        rebuildTopic.addListener(String.class, (channel, message) ->
+                rebuildExecutor.execute(() -> onRebuild(JsonUtil.fromJsonString(message, LocalCacheRebuildMessage.class))));
+        ackTopic.addListener(String.class, (channel, message) ->
+                onAck(JsonUtil.fromJsonString(message, LocalCacheRebuildAck.class)));
+        log.info("Subscribed to local cache rebuild channel as instance {}", instanceId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * Asks every java instance to delete and rebuild the given local caches, and waits (up to the ack timeout) until
+     * all of them have done so.
+     */
+    public LocalCacheRebuildResult broadcastRebuild(List<String> cacheNames) {
+        LocalCacheRebuildResult result = new LocalCacheRebuildResult();
+        result.setRequestId(UUID.randomUUID().toString());
+        result.setCacheNames(cacheNames);
+        pendingRebuilds.put(result.getRequestId(), result);
+        try {
+            LocalCacheRebuildMessage message =
+                    new LocalCacheRebuildMessage(result.getRequestId(), instanceId, cacheNames, true);
+            long receivers = rebuildTopic.publish(JsonUtil.toJsonString(message));
+            log.info("Broadcast rebuild {} of local caches {} to {} instances", result.getRequestId(), cacheNames, receivers);
+            synchronized (result) {
+                result.setExpectedInstances(receivers);
+                long deadline = System.currentTimeMillis() + ackTimeoutMillis;
+                long remaining = ackTimeoutMillis;
+                while (acknowledged(result) < receivers && remaining > 0) {
+                    result.wait(remaining);
+                    remaining = deadline - System.currentTimeMillis();
+                }
+                result.setComplete(acknowledged(result) >= receivers);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pendingRebuilds.remove(result.getRequestId());
+        }
+        if (!result.isComplete()) {
+            log.error("Rebuild {} was not acknowledged by all instances: {}", result.getRequestId(), result);
+        }
+        return result;
+    }
+
+    private static int acknowledged(LocalCacheRebuildResult result) {
+        return result.getAcknowledgedInstances().size() + result.getFailedInstances().size();
+    }
+
+    private void onRebuild(LocalCacheRebuildMessage message) {
+        if (message == null) {
+            return;
+        }
+        LocalCacheRebuildAck ack = new LocalCacheRebuildAck(message.getRequestId(), instanceId, true, null);
+        try {
+            log.info("Rebuilding local caches {} as requested by {}", message.getCacheNames(), message.getOrigin());
+            if (message.isReloadConfigs()) {
+                cacheConfiguration.clearConfigs();
+            }
+            for (String cacheName : message.getCacheNames()) {
+                routingCacheManager.rebuildCache(cacheName);
+            }
+        } catch (Exception e) {
+            log.error("Failed to rebuild local caches {}", message.getCacheNames(), e);
+            ack.setSuccess(false);
+            ack.setError(e.getMessage());
+        }
+        ackTopic.publish(JsonUtil.toJsonString(ack));
+    }
+
+    private void onAck(LocalCacheRebuildAck ack) {
+        if (ack == null) {
+            return;
+        }
+        LocalCacheRebuildResult result = pendingRebuilds.get(ack.getRequestId());
+        if (result == null) {
+            // Either triggered by another instance, or the caller already gave up waiting
+            return;
+        }
+        synchronized (result) {
+            if (ack.isSuccess()) {
+                result.getAcknowledgedInstances().add(ack.getInstanceId());
+            } else {
+                result.getFailedInstances().add(ack.getInstanceId());
+            }
+            result.notifyAll();
+        }
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    private static String resolveInstanceId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -1,15 +1,34 @@
 package com.example.cache.redis.cache;
 
+import com.example.cache.redis.codec.CacheValueCodec;
+import com.example.cache.redis.codec.CacheValueCodecs;
+import com.example.cache.redis.model.LocalCachedMapConfig;
+import com.example.cache.redis.model.Versioned;
 import com.example.cache.redis.util.JsonUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
 import org.springframework.cache.Cache;
 import org.springframework.cache.support.SimpleValueWrapper;
 import org.springframework.lang.NonNull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 @Slf4j
 public class RedisCache implements Cache {
 
@@ -28,6 +47,9 @@ public class RedisCache implements Cache {
      */
     private RLocalCachedMap<Object, Object> map;
 
+    // The central redis hash behind the map, read around the local cache for compare-and-set. Null in LOCALCACHE mode
+    private final RMap<Object, Object> centralMap;
+
     // The name of the cache. (Will generally be of the form 'database_entity'. Eg: product, order, etc)
     private String name;
 
@@ -35,16 +57,99 @@ public class RedisCache implements Cache {
     // This is used to deserialize the cached data back to it's original type
     private Class classType;
 
+    // Codec used to serialize new entries. Existing entries are always read with the codec they were written with.
+    private final CacheValueCodec codec;
+    // Serialized size from which new entries are compressed. 0 = never
+    private final int compressionThreshold;
+
     // For performance tracking
-    private final AtomicLong hits = new AtomicLong();
-    private final AtomicLong misses = new AtomicLong();
-    // The instant of time when this cache was created. Will help make better sense of the performance metrics
+    private final RedisCacheMetrics metrics;
+
+    // Read counts per key, used to warm up the local caches of new java instances
+    private final HotKeyRecorder hotKeys;
+
+    // Refresh-ahead of hot entries before they expire from the local cache. Null unless enabled for this cache.
+    private final RefreshAhead refreshAhead;
+
+    // Loads a single entity by key. Used to refresh entries ahead of expiry
+    private volatile Function<Object, Object> refreshLoader;
+
+    // How long a key known to have no value is cached as such. 0 disables negative caching
+    private final long negativeTtlMillis;
+
+    // Read-only view over the in-memory part of the map, used to tell local hits apart from central Redis hits
+    private final Map<Object, Object> localView;
+
+    /**
+     * Loads that are currently running on this java instance, keyed by cache key.
+     *
+     * The first caller to miss a key becomes the 'leader' and runs the valueLoader, every other caller that misses the
+     * same key while the load is running simply waits on the leader's future instead of hitting the DB itself.
+     */
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    // Number of callers that were served by another caller's load instead of running the valueLoader themselves
+    private final LongAdder deduplicatedLoads = new LongAdder();
+
+    // When enabled, the leader additionally takes a redisson lock on the key so that only one java instance loads it
+    private final boolean distributedLoadLock;
+    private final long loadLockWaitMillis;
+    private final long loadLockLeaseMillis;
+    // Max time a caller waits on the in-flight load of another caller
+    private final long loadWaitMillis;
+
+    private static final long DEFAULT_LOAD_LOCK_WAIT_MILLIS = 5000;
+    private static final long DEFAULT_LOAD_LOCK_LEASE_MILLIS = 10000;
+    private static final long DEFAULT_LOAD_WAIT_MILLIS = 10000;
+    private static final double DEFAULT_REFRESH_AHEAD_FACTOR = 0.75;
+    private static final int DEFAULT_REFRESH_AHEAD_MIN_READS = 10;
+    private static final int DEFAULT_REFRESH_AHEAD_MAX_ENTRIES = 100000;
+    private static final int MAX_PUT_IF_NEWER_ATTEMPTS = 5;
 
 
     public RedisCache(String name, RLocalCachedMap<Object, Object> map, Class classType) {
+        this(name, map, null, classType, null, new RedisCacheMetrics(name, null), new HotKeyRecorder(0), null, 0);
+    }
+
+    public RedisCache(String name, RLocalCachedMap<Object, Object> map, RMap<Object, Object> centralMap, Class classType,
+                      LocalCachedMapConfig config, RedisCacheMetrics metrics, HotKeyRecorder hotKeys,
+                      Executor refreshExecutor, long negativeTtlMillis) {
         this.name = name;
         this.map = map;
+        this.centralMap = centralMap;
         this.classType = classType;
+        this.metrics = metrics;
+        this.hotKeys = hotKeys;
+        this.localView = map.getCachedMap();
+        this.codec = CacheValueCodecs.forName(config != null ? config.getCodec() : null);
+        this.compressionThreshold = config != null && config.getCompressionThresholdBytes() != null
+                ? config.getCompressionThresholdBytes() : 0;
+        this.distributedLoadLock = config != null && Boolean.TRUE.equals(config.getDistributedLoadLock());
+        this.loadLockWaitMillis = config != null && config.getLoadLockWaitMillis() != null
+                ? config.getLoadLockWaitMillis() : DEFAULT_LOAD_LOCK_WAIT_MILLIS;
+        this.loadLockLeaseMillis = config != null && config.getLoadLockLeaseMillis() != null
+                ? config.getLoadLockLeaseMillis() : DEFAULT_LOAD_LOCK_LEASE_MILLIS;
+        this.loadWaitMillis = config != null && config.getLoadWaitMillis() != null
+                ? config.getLoadWaitMillis() : DEFAULT_LOAD_WAIT_MILLIS;
+        this.refreshAhead = createRefreshAhead(name, config, refreshExecutor);
+        this.negativeTtlMillis = negativeTtlMillis;
+    }
+
+    private static RefreshAhead createRefreshAhead(String name, LocalCachedMapConfig config, Executor executor) {
+        if (config == null || !Boolean.TRUE.equals(config.getRefreshAhead()) || executor == null) {
+            return null;
+        }
+        if (config.getTimeToLiveMillis() == null || config.getTimeToLiveMillis() <= 0) {
+            log.error("Refresh-ahead is enabled for {} cache, but it has no timeToLiveMillis. Disabling it", name);
+            return null;
+        }
+        double factor = config.getRefreshAheadFactor() != null && config.getRefreshAheadFactor() > 0
+                && config.getRefreshAheadFactor() < 1 ? config.getRefreshAheadFactor() : DEFAULT_REFRESH_AHEAD_FACTOR;
+        int minReads = config.getRefreshAheadMinReads() != null
+                ? config.getRefreshAheadMinReads() : DEFAULT_REFRESH_AHEAD_MIN_READS;
+        int maxEntries = config.getCacheSize() != null && config.getCacheSize() > 0
+                ? config.getCacheSize() : DEFAULT_REFRESH_AHEAD_MAX_ENTRIES;
+        return new RefreshAhead(name, config.getTimeToLiveMillis(), factor, minReads, maxEntries, executor);
     }
 
     @Override
@@ -61,20 +166,68 @@ public class RedisCache implements Cache {
 
     @Override
     public ValueWrapper get(@NonNull Object key) {
-        Object value = map.get(key);
+        return wrap(key, lookup(key));
+    }
+
+    /**
+     * Turns a raw cached value into what get(key) returns: null on a miss, a null value for a live negative entry.
+     */
+    private ValueWrapper wrap(Object key, Object value) {
         if (value == null) {
             log.info("Entry for key {} not found in {} cache", key, name);
             return null;
         }
-        Object cachedObject = JsonUtil.fromJsonString((String) value, classType);
+        if (CacheValueCodecs.isNegative(value)) {
+            if (!isLive(key, (byte[]) value)) {
+                return null;
+            }
+            // The key is known to have no value. Spring treats the null as a cached result and skips the loader
+            metrics.recordNegativeHit();
+            log.info("Returning cached absence of key {} from {} cache", key, name);
+            return new SimpleValueWrapper(null);
+        }
+        Object cachedObject = deserialize(value);
         if (cachedObject == null) {
-            log.error("Failed to deserialize object! {}: {}: {}", value, key, classType.getName());
+            log.error("Failed to deserialize object! {}: {}", key, classType.getName());
             return null;
         }
         log.info("Returning cached value for entry with key {} from {} cache", key, name);
         return new SimpleValueWrapper(cachedObject);
     }
 
+    /**
+     * Reads the raw cached value, timing the local in-memory lookup and the central Redis lookup separately.
+     */
+    private Object lookup(Object key) {
+        Object value = lookupLocal(key);
+        if (value != null) {
+            return value;
+        }
+        long start = System.nanoTime();
+        value = map.get(key);
+        onRedisLookup(key, value, start);
+        return value;
+    }
+
+    private Object lookupLocal(Object key) {
+        hotKeys.record(key);
+        long start = System.nanoTime();
+        Object value = localView != null ? localView.get(key) : null;
+        metrics.recordLocalLookup(System.nanoTime() - start, value != null);
+        if (value != null && refreshAhead != null && refreshLoader != null) {
+            refreshAhead.onLocalHit(key, this::refresh);
+        }
+        return value;
+    }
+
+    private void onRedisLookup(Object key, Object value, long start) {
+        metrics.recordRedisLookup(System.nanoTime() - start, value != null);
+        if (value != null && refreshAhead != null) {
+            // The central value has now been copied into the local cache
+            refreshAhead.onCached(key);
+        }
+    }
+
     @Override
     public <T> T get(@NonNull Object key, Class<T> type) {
         // This method doesn't seem to be used by Spring cache
@@ -83,24 +236,523 @@ public class RedisCache implements Cache {
         return null;
     }
 
+    /**
+     * Returns the cached value for the key, loading it through the valueLoader on a miss. This is the method Spring
+     * calls for @Cacheable(sync = true).
+     *
+     * Concurrent misses for the same key on this java instance are collapsed into a single call of the valueLoader;
+     * the other callers wait for and share its result, for at most loadWaitMillis. If distributedLoadLock is enabled
+     * for this cache, the loading caller also holds a redisson lock on the key, so that only one java instance across
+     * the cluster hits the DB and the others pick the value up from central cache once the lock is released.
+     */
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
-        // This method doesn't seem to be used by Spring cache
-        // We will throw an error just in-case, so that we know if this method gets erroneously called.
-        log.error("Unexpected get(Object key, Callable<T> valueLoader) method of RedisCache called!");
-        return null;
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            deduplicatedLoads.increment();
+            log.debug("Waiting on in-flight load for key {} of {} cache", key, name);
+            return (T) awaitLoad(key, inFlightLoad, valueLoader);
+        }
+
+        try {
+            Object value = distributedLoadLock ? loadUnderLock(key, valueLoader) : loadAndCache(key, valueLoader);
+            load.complete(value);
+            return (T) value;
+        } catch (Exception e) {
+            load.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            inFlightLoads.remove(key, load);
+        }
+    }
+
+    /**
+     * Non-blocking variant of get(key, valueLoader).
+     *
+     * A local hit completes immediately. Otherwise central Redis is read asynchronously, and on a miss the valueLoader
+     * is called to start an asynchronous load, which must not block the calling thread (Eg: by running the DB read on
+     * an executor). Concurrent misses for the same key on this java instance share a single load, also with callers of
+     * get(key, valueLoader). The distributedLoadLock setting is not applied here, as it would block on the lock.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getAsync(@NonNull Object key,
+                                             @NonNull Function<Object, CompletableFuture<T>> valueLoader) {
+        Object local = lookupLocal(key);
+        if (local != null) {
+            ValueWrapper cached = wrap(key, local);
+            return cached != null ? CompletableFuture.completedFuture((T) cached.get()) : loadAsync(key, valueLoader);
+        }
+        long start = System.nanoTime();
+        return map.getAsync(key).thenCompose(value -> {
+            onRedisLookup(key, value, start);
+            ValueWrapper cached = wrap(key, value);
+            return cached != null ? CompletableFuture.completedFuture((T) cached.get()) : loadAsync(key, valueLoader);
+        }).toCompletableFuture();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> loadAsync(Object key, Function<Object, CompletableFuture<T>> valueLoader) {
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            deduplicatedLoads.increment();
+            log.debug("Waiting on in-flight load for key {} of {} cache", key, name);
+            return inFlightLoad.thenApply(value -> (T) value);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> loaded;
+        try {
+            loaded = valueLoader.apply(key);
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((value, error) -> {
+            metrics.recordLoad(System.nanoTime() - start, error == null);
+            // Hand the value out before caching it, so that a failing cache write can't leave the load in flight
+            inFlightLoads.remove(key, load);
+            if (error != null) {
+                load.completeExceptionally(error);
+                return;
+            }
+            load.complete(value);
+            try {
+                putAsync(key, value);
+            } catch (RuntimeException e) {
+                log.error("Failed to cache loaded entry for key:{} of {} cache", key, name, e);
+            }
+        });
+        return load.thenApply(value -> (T) value);
+    }
+
+    /**
+     * Waits for the in-flight load of another caller, for at most loadWaitMillis.
+     */
+    private Object awaitLoad(Object key, CompletableFuture<Object> inFlightLoad, Callable<?> valueLoader) {
+        try {
+            return inFlightLoad.get(loadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("Timed out waiting on in-flight load for key {} of {} cache", key, name);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
     }
 
+    private Object loadUnderLock(Object key, Callable<?> valueLoader) throws Exception {
+        RLock lock = map.getLock(key);
+        boolean locked = lock.tryLock(loadLockWaitMillis, loadLockLeaseMillis, TimeUnit.MILLISECONDS);
+        try {
+            if (locked) {
+                // Another java instance may have loaded the key while we were waiting for the lock
+                ValueWrapper cached = get(key);
+                if (cached != null) {
+                    deduplicatedLoads.increment();
+                    return cached.get();
+                }
+            } else {
+                log.warn("Timed out waiting for load lock on key {} of {} cache. Loading without lock", key, name);
+            }
+            return loadAndCache(key, valueLoader);
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Object loadAndCache(Object key, Callable<?> valueLoader) throws Exception {
+        long start = System.nanoTime();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            metrics.recordLoad(System.nanoTime() - start, false);
+            throw e;
+        }
+        metrics.recordLoad(System.nanoTime() - start, true);
+        if (!(value instanceof Versioned)) {
+            put(key, value);
+            return value;
+        }
+        if (putIfNewer(key, (Versioned) value)) {
+            return value;
+        }
+        // A newer version was cached meanwhile (Eg: by a write). Hand that one out rather than the stale load, so that
+        // callers, and the tiers in front of this cache, don't keep the stale one
+        ValueWrapper cached = wrap(key, centralMap != null ? centralMap.get(key) : map.get(key));
+        return cached != null ? cached.get() : value;
+    }
+
+    /**
+     * Caches the value for the key. A null value is cached as a negative entry when negative caching is enabled for
+     * this cache, and evicts the key otherwise. Versioned values go through putIfNewer.
+     */
     @Override
     public void put(@NonNull Object key, Object value) {
-        log.info("Inserting entry for key:{} and value:{} into {} cache", key, JsonUtil.toJsonString(value), name);
-        map.fastPut(key, JsonUtil.toJsonString(value));
+        if (value == null) {
+            if (negativeTtlMillis > 0) {
+                putNegative(key);
+            } else {
+                evict(key);
+            }
+            return;
+        }
+        if (value instanceof Versioned) {
+            putIfNewer(key, (Versioned) value);
+            return;
+        }
+        log.info("Inserting entry for key:{} into {} cache", key, name);
+        map.fastPut(key, encode(value));
+        onPut(key);
+    }
+
+    /**
+     * Caches the value for the key, unless the cache already holds a newer version of it. Returns false if the value
+     * was dropped.
+     *
+     * This is a compare-and-set: the current entry is read from central redis and its version compared, then it is
+     * replaced only if it hasn't changed since it was read. Both the replace and the insert of an absent key are
+     * atomic scripts on the redis side. If the entry keeps changing under us, the key is evicted after a few attempts,
+     * so that the next read reloads it rather than risking a stale value.
+     *
+     * Only versions of cached entries are compared: an evicted or deleted key leaves no tombstone behind. So an older
+     * value put after the key was evicted (Eg: by a slow load that read the DB before a delete) is cached again, until
+     * its local TTL or the next write. Also, versions set from the clock of the writing instance (like
+     * Product.version) are only as ordered as the clocks of the instances are in sync; two writes of the same entity a
+     * few ms apart from instances with skewed clocks can be ordered the wrong way round. A version assigned by the DB
+     * itself (Eg: incremented by each update) would have neither problem.
+     */
+    public boolean putIfNewer(@NonNull Object key, @NonNull Versioned value) {
+        log.info("Inserting entry for key:{} into {} cache if newer", key, name);
+        byte[] encoded = encode(value);
+        for (int attempt = 0; attempt < MAX_PUT_IF_NEWER_ATTEMPTS; attempt++) {
+            Object current = centralMap != null ? centralMap.get(key) : localView != null ? localView.get(key) : null;
+            if (current == null) {
+                if (map.fastPutIfAbsent(key, encoded)) {
+                    onPut(key);
+                    return true;
+                }
+                continue;
+            }
+            if (holdsNewerVersion(current, value)) {
+                log.info("Dropping stale entry for key:{} of {} cache, version {}", key, name, value.getVersion());
+                metrics.recordStalePut();
+                return false;
+            }
+            if (map.replace(key, current, encoded)) {
+                onPut(key);
+                return true;
+            }
+        }
+        log.warn("Key:{} of {} cache kept changing while being cached. Evicting it", key, name);
+        evict(key);
+        return false;
+    }
+
+    /**
+     * Caches each of the values through putIfNewer, running the compare-and-set of all the keys at the same time, so
+     * that a batch costs about the round trips of a single key. Returns the number of values that were cached.
+     */
+    public int putAllIfNewer(@NonNull Map<Object, ? extends Versioned> values) {
+        log.info("Inserting {} entries into {} cache if newer", values.size(), name);
+        List<CompletableFuture<Boolean>> puts = new ArrayList<>(values.size());
+        for (Map.Entry<Object, ? extends Versioned> entry : values.entrySet()) {
+            puts.add(putIfNewerAsync(entry.getKey(), entry.getValue(), encode(entry.getValue()), 0));
+        }
+        int put = 0;
+        for (CompletableFuture<Boolean> result : puts) {
+            if (result.join()) {
+                put++;
+            }
+        }
+        return put;
+    }
+
+    private boolean holdsNewerVersion(Object current, Versioned value) {
+        if (CacheValueCodecs.isNegative(current)) {
+            return false;
+        }
+        Object cachedObject = deserialize(current);
+        if (!(cachedObject instanceof Versioned)) {
+            return false;
+        }
+        Long currentVersion = ((Versioned) cachedObject).getVersion();
+        return currentVersion != null && (value.getVersion() == null || currentVersion > value.getVersion());
+    }
+
+    private void onPut(Object key) {
+        metrics.recordPuts(1);
+        if (refreshAhead != null) {
+            refreshAhead.onCached(key);
+        }
+    }
+
+    /**
+     * Non-blocking variant of putIfNewer(key, value), running the same compare-and-set with asynchronous redis calls.
+     */
+    private CompletableFuture<Boolean> putIfNewerAsync(Object key, Versioned value, byte[] encoded, int attempt) {
+        if (attempt == MAX_PUT_IF_NEWER_ATTEMPTS) {
+            log.warn("Key:{} of {} cache kept changing while being cached. Evicting it", key, name);
+            map.fastRemoveAsync(key);
+            return CompletableFuture.completedFuture(false);
+        }
+        CompletableFuture<Object> read = centralMap != null ? centralMap.getAsync(key).toCompletableFuture()
+                : CompletableFuture.completedFuture(localView != null ? localView.get(key) : null);
+        return read.thenCompose(current -> {
+            if (current == null) {
+                return map.fastPutIfAbsentAsync(key, encoded).thenCompose(added -> added
+                        ? putDone(key) : putIfNewerAsync(key, value, encoded, attempt + 1));
+            }
+            if (holdsNewerVersion(current, value)) {
+                log.info("Dropping stale entry for key:{} of {} cache, version {}", key, name, value.getVersion());
+                metrics.recordStalePut();
+                return CompletableFuture.completedFuture(false);
+            }
+            return map.replaceAsync(key, current, encoded).thenCompose(replaced -> replaced
+                    ? putDone(key) : putIfNewerAsync(key, value, encoded, attempt + 1));
+        });
+    }
+
+    private CompletableFuture<Boolean> putDone(Object key) {
+        onPut(key);
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Non-blocking variant of put(key, value). Failures are only logged, the value simply won't be cached.
+     */
+    private void putAsync(Object key, Object value) {
+        if (value instanceof Versioned) {
+            log.info("Inserting entry for key:{} into {} cache if newer", key, name);
+            putIfNewerAsync(key, (Versioned) value, encode(value), 0).whenComplete((put, error) -> {
+                if (error != null) {
+                    log.error("Failed to insert entry for key:{} into {} cache", key, name, error);
+                }
+            });
+            return;
+        }
+        if (value == null && negativeTtlMillis <= 0) {
+            map.fastRemoveAsync(key);
+            return;
+        }
+        Object entry = value != null ? encode(value)
+                : CacheValueCodecs.encodeNegative(System.currentTimeMillis() + negativeTtlMillis);
+        map.fastPutAsync(key, entry).whenComplete((added, error) -> {
+            if (error != null) {
+                log.error("Failed to insert entry for key:{} into {} cache", key, name, error);
+            }
+        });
+        if (value != null) {
+            onPut(key);
+        } else {
+            metrics.recordPuts(1);
+        }
+    }
+
+    /**
+     * Reloads the entry through the refresh loader and replaces the cached value, resetting its age.
+     */
+    private void refresh(Object key) {
+        log.info("Refreshing key {} of {} cache ahead of expiry", key, name);
+        long start = System.nanoTime();
+        Object value = refreshLoader.apply(key);
+        metrics.recordLoad(System.nanoTime() - start, true);
+        metrics.recordRefresh();
+        put(key, value);
+    }
+
+    /**
+     * Records that the key has no value, for negativeTtlMillis.
+     */
+    private void putNegative(Object key) {
+        log.info("Caching absence of key:{} in {} cache for {}ms", key, name, negativeTtlMillis);
+        map.fastPut(key, CacheValueCodecs.encodeNegative(System.currentTimeMillis() + negativeTtlMillis));
+        metrics.recordPuts(1);
+    }
+
+    /**
+     * Whether the negative entry is still live. Expired ones are removed, unless they have been overwritten meanwhile.
+     */
+    private boolean isLive(Object key, byte[] negativeEntry) {
+        if (CacheValueCodecs.negativeExpiresAt(negativeEntry) > System.currentTimeMillis()) {
+            return true;
+        }
+        map.removeAsync(key, negativeEntry);
+        return false;
+    }
+
+    /**
+     * Sets the loader used to refresh hot entries ahead of expiry, when refresh-ahead is enabled for this cache.
+     */
+    public void setRefreshLoader(Function<Object, Object> refreshLoader) {
+        this.refreshLoader = refreshLoader;
+    }
+
+    /**
+     * Returns the cached values for all of the given keys that are present in the cache, keyed by cache key.
+     *
+     * Keys are first looked up in the local map of this java instance; only the ones missing there are fetched from
+     * central Redis, in a single round trip.
+     */
+    public <T> Map<Object, T> getAll(@NonNull Collection<?> keys) {
+        return lookupAll(keys, new HashSet<>(), true);
+    }
+
+    /**
+     * Copies the given keys from central Redis into the local cache of this java instance, and returns how many of
+     * them were found. Unlike getAll(keys), these reads are not counted as hot key reads, so that warming up the
+     * local cache doesn't keep the warmed up keys hot by itself.
+     */
+    public int warmUp(@NonNull Collection<?> keys) {
+        return lookupAll(keys, new HashSet<>(), false).size();
+    }
+
+    /**
+     * Same as getAll(keys), additionally collecting the keys that are cached as having no value into negativeKeys.
+     */
+    private <T> Map<Object, T> lookupAll(Collection<?> keys, Set<Object> negativeKeys, boolean recordHotKeys) {
+        Map<Object, T> result = new HashMap<>(keys.size() * 2);
+        Set<Object> remoteKeys = new HashSet<>();
+
+        long start = System.nanoTime();
+        for (Object key : keys) {
+            if (recordHotKeys) {
+                hotKeys.record(key);
+            }
+            Object value = localView != null ? localView.get(key) : null;
+            if (value != null) {
+                putDeserialized(result, key, value, negativeKeys);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        long localDone = System.nanoTime();
+        metrics.recordLocalLookup(localDone - start, keys.size() - remoteKeys.size());
+        if (remoteKeys.isEmpty()) {
+            return result;
+        }
+
+        Map<Object, Object> remoteValues = map.getAll(remoteKeys);
+        metrics.recordRedisLookup(System.nanoTime() - localDone, remoteValues.size(),
+                remoteKeys.size() - remoteValues.size());
+        for (Map.Entry<Object, Object> entry : remoteValues.entrySet()) {
+            putDeserialized(result, entry.getKey(), entry.getValue(), negativeKeys);
+        }
+        log.info("Returning {} of {} requested entries from {} cache", result.size(), keys.size(), name);
+        return result;
+    }
+
+    /**
+     * Returns the values for all of the given keys, loading the ones missing from the cache through the bulkLoader
+     * in a single call and caching them. Keys the bulkLoader doesn't return a value for are left out of the result,
+     * and are cached as negative entries when negative caching is enabled for this cache.
+     */
+    public <T> Map<Object, T> getAll(@NonNull Collection<?> keys, @NonNull Function<Set<Object>, Map<Object, T>> bulkLoader) {
+        Set<Object> negativeKeys = new HashSet<>();
+        Map<Object, T> result = lookupAll(keys, negativeKeys, true);
+        Set<Object> missingKeys = new HashSet<>(keys);
+        missingKeys.removeAll(result.keySet());
+        missingKeys.removeAll(negativeKeys);
+        if (missingKeys.isEmpty()) {
+            return result;
+        }
+
+        long start = System.nanoTime();
+        Map<Object, T> loaded;
+        try {
+            loaded = bulkLoader.apply(missingKeys);
+        } catch (RuntimeException e) {
+            metrics.recordLoad(System.nanoTime() - start, 0, false);
+            throw e;
+        }
+        metrics.recordLoad(System.nanoTime() - start, loaded.size(), true);
+        if (!loaded.isEmpty()) {
+            putAll(loaded);
+            result.putAll(loaded);
+        }
+        if (negativeTtlMillis > 0 && loaded.size() < missingKeys.size()) {
+            Map<Object, Object> negativeEntries = new HashMap<>();
+            byte[] negativeEntry = CacheValueCodecs.encodeNegative(System.currentTimeMillis() + negativeTtlMillis);
+            for (Object key : missingKeys) {
+                if (!loaded.containsKey(key)) {
+                    negativeEntries.put(key, negativeEntry);
+                }
+            }
+            log.info("Caching absence of {} keys in {} cache for {}ms", negativeEntries.size(), name, negativeTtlMillis);
+            map.putAll(negativeEntries);
+            metrics.recordPuts(negativeEntries.size());
+        }
+        return result;
+    }
+
+    /**
+     * Inserts all of the given entries with a single write to central Redis (and a single sync message to the local
+     * caches of the other instances). Versioned values can't be compared in bulk, so they go through putIfNewer one
+     * by one instead.
+     */
+    public void putAll(@NonNull Map<?, ?> entries) {
+        if (!entries.isEmpty() && entries.values().iterator().next() instanceof Versioned) {
+            entries.forEach(this::put);
+            return;
+        }
+        log.info("Inserting {} entries into {} cache", entries.size(), name);
+        Map<Object, Object> encoded = new HashMap<>(entries.size() * 2);
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            encoded.put(entry.getKey(), encode(entry.getValue()));
+        }
+        map.putAll(encoded);
+        metrics.recordPuts(entries.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> void putDeserialized(Map<Object, T> result, Object key, Object value, Set<Object> negativeKeys) {
+        if (CacheValueCodecs.isNegative(value)) {
+            if (isLive(key, (byte[]) value)) {
+                metrics.recordNegativeHit();
+                negativeKeys.add(key);
+            }
+            return;
+        }
+        Object cachedObject = deserialize(value);
+        if (cachedObject == null) {
+            log.error("Failed to deserialize object! {}: {}", key, classType.getName());
+            return;
+        }
+        result.put(key, (T) cachedObject);
+    }
+
+    private byte[] encode(Object value) {
+        return CacheValueCodecs.encode(codec, value, compressionThreshold, metrics.getCompression());
+    }
+
+    /**
+     * Entries are stored as codec-framed bytes. Entries written before the codecs were introduced are JSON strings,
+     * and are still read through JsonUtil until they get overwritten.
+     */
+    @SuppressWarnings("unchecked")
+    private Object deserialize(Object value) {
+        if (value instanceof byte[]) {
+            return CacheValueCodecs.decode((byte[]) value, classType);
+        }
+        return JsonUtil.fromJsonString((String) value, classType);
     }
 
     @Override
     public void evict(@NonNull Object key) {
         log.info("Removing entry for key:{} from {} cache", key, name);
-        map.fastRemove(key);
+        metrics.recordEvictions(map.fastRemove(key));
     }
 
     /**
@@ -108,7 +760,7 @@ public class RedisCache implements Cache {
      */
     public void evict(@NonNull List<Object> keys) {
         log.info("Removing entries for keys:{} from {} cache", JsonUtil.toJsonString(keys), name);
-        map.fastRemove(keys.toArray(new Object[0]));
+        metrics.recordEvictions(map.fastRemove(keys.toArray(new Object[0])));
     }
 
     /**
@@ -130,4 +782,31 @@ public class RedisCache implements Cache {
         log.info("Clearing all entries for {} cache from local cacheMap only", name);
         map.clearLocalCache();
     }
+
+    /**
+     * Destroys the underlying RLocalCachedMap of this java instance, releasing it's local cache and pub/sub listener.
+     * The central cached data is left intact.
+     */
+    public void destroy() {
+        map.destroy();
+    }
+
+    public RedisCacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of entries currently held in the local in-memory map of this java instance.
+     */
+    public int getLocalSize() {
+        return localView != null ? localView.size() : 0;
+    }
+
+    /**
+     * Number of get(key, valueLoader) callers that were served by a load already running for the same key, rather than
+     * calling the valueLoader themselves.
+     */
+    public long getDeduplicatedLoadCount() {
+        return deduplicatedLoads.sum();
+    }
 }
@@ -1,31 +1,60 @@
 package com.example.cache.redis.cache;
 
 import com.example.cache.redis.config.CacheConfiguration;
+import com.example.cache.redis.config.CacheEntityRegistry;
 import com.example.cache.redis.model.LocalCachedMapConfig;
-import com.example.cache.redis.model.Product;
 import com.example.cache.redis.util.JsonUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.LocalCachedMapOptions;
 import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RMap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Component
 @Slf4j
 public class RedisCacheManager implements CacheManager {
 
     // A map to store the existing cache instances
-    private static HashMap<String, RedisCache> caches = new HashMap<>();
-    private static final Integer DEFAULT_CACHE_SIZE = 100;
+    private final ConcurrentHashMap<String, RedisCache> caches = new ConcurrentHashMap<>();
+    // Metrics outlive the cache instances, so that counts are kept when a local cache is deleted and recreated
+    private final ConcurrentHashMap<String, RedisCacheMetrics> metrics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, HotKeyRecorder> hotKeyRecorders = new ConcurrentHashMap<>();
+    // Single entity loaders, registered by the services owning each cache. Used for refresh-ahead.
+    private final ConcurrentHashMap<String, Function<Object, Object>> loaders = new ConcurrentHashMap<>();
+
+    // Default number of entries held in each local cache, unless overridden by the cache's LocalCachedMapConfig
+    @Value("${cache.redis.local.defaultCacheSize:10000}")
+    private Integer defaultCacheSize;
+
+    // Max number of distinct keys whose reads are counted per cache between two hot key flushes
+    @Value("${cache.redis.hotKeys.maxTrackedKeys:10000}")
+    private int maxTrackedHotKeys;
 
     @Autowired
     private CacheConfiguration cacheConfiguration;
 
+    @Autowired
+    private CacheEntityRegistry entityRegistry;
+
     /**
      * This wrapper over Redis allows us to connect to and interact with the underlying redis cache and procure
      * LocalCachedMaps (the underlying data structure of our cache Implementation)
@@ -33,54 +62,191 @@ public class RedisCacheManager implements CacheManager {
     @Autowired
     private RedisClientWrapper wrapper;
 
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${cache.redis.refreshAhead.threads:4}")
+    private int refreshThreads;
+
+    @Value("${cache.redis.refreshAhead.queueSize:1000}")
+    private int refreshQueueSize;
+
+    // How long missing keys are cached as such, unless set in the cache's LocalCachedMapConfig
+    @Value("${cache.redis.negativeTtlMillis:0}")
+    private long defaultNegativeTtlMillis;
 
+    // Bounded executor shared by all caches to refresh entries ahead of expiry. Excess refreshes are rejected.
+    private ThreadPoolExecutor refreshExecutor;
+
+    @PostConstruct
+    public void init() {
+        refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(refreshQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-ahead");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+
+    /**
+     * Returns the cache with the given name, creating it on first use.
+     *
+     * Creation goes through computeIfAbsent, so even when many requests ask for a new cache at the same time, exactly
+     * one RLocalCachedMap (and so exactly one pub/sub listener) is created per cache name. Lookups of an existing
+     * cache don't lock at all.
+     */
     @Override
     public RedisCache getCache(String name) {
-        RedisCache cache;
-        if (caches.containsKey(name))
-            cache = caches.get(name);
-        else {
-            LocalCachedMapOptions<Object, Object> options = getOptions(name, DEFAULT_CACHE_SIZE);
-            log.info("Cache for {} does not exist. Creating new Cache with config: {}",
-                    name, JsonUtil.toJsonString(options));
-            RLocalCachedMap<Object, Object> redisCacheMap = wrapper.getLocalCachedMap(name, options);
-            Class classType = getClassTypeForEntity(name);
-            cache = new RedisCache(name, redisCacheMap, classType);
-            caches.put(name, cache);
+        RedisCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
         }
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    private RedisCache createCache(String name) {
+        LocalCachedMapOptions<Object, Object> options = getOptions(name, defaultCacheSize);
+        log.info("Cache for {} does not exist. Creating new Cache with config: {}",
+                name, JsonUtil.toJsonString(options));
+        RLocalCachedMap<Object, Object> redisCacheMap = wrapper.getLocalCachedMap(name, options);
+        RedisCacheMetrics cacheMetrics = metrics.computeIfAbsent(name, n -> new RedisCacheMetrics(n, meterRegistry));
+        HotKeyRecorder hotKeys = hotKeyRecorders.computeIfAbsent(name, n -> new HotKeyRecorder(maxTrackedHotKeys));
+        LocalCachedMapConfig config = cacheConfiguration.getLocalCachedMapConfig(name);
+        long negativeTtlMillis = config != null && config.getNegativeTtlMillis() != null
+                ? config.getNegativeTtlMillis() : defaultNegativeTtlMillis;
+        // There is no central hash to compare against when the data only lives in the local caches
+        RMap<Object, Object> centralMap = options.getStoreMode() == LocalCachedMapOptions.StoreMode.LOCALCACHE
+                ? null : wrapper.getCentralMap(name);
+        RedisCache cache = new RedisCache(name, redisCacheMap, centralMap, getClassTypeForEntity(name), config,
+                cacheMetrics, hotKeys, refreshExecutor, negativeTtlMillis);
+        cache.setRefreshLoader(loaders.get(name));
         return cache;
     }
 
     /**
-     * Gets the custom config options for the cache by name. These config options
-     * are fetched using the cacheConfiguration module. For now, cacheSize can be customized.
+     * Gets the custom config options for the cache by name. These config options are fetched using the
+     * cacheConfiguration module, and can customize the size, TTL, max idle time, eviction policy, sync strategy,
+     * reconnection strategy, cache provider and store mode of the local cache.
+     *
+     * Every setting is validated on its own: an invalid value is logged and replaced by its default, so that one bad
+     * setting in the DB cannot prevent the cache from being created.
      */
     public LocalCachedMapOptions<Object, Object> getOptions(String cacheName, Integer cacheSize) {
-        // Check whether there are any custom config options for this mapType.
-        LocalCachedMapConfig config = cacheConfiguration.getLocalCachedMapConfig(cacheName);
-        if (config != null) {
-            // If config is present, override defaults
-            cacheSize = config.getCacheSize();
-        }
-        return LocalCachedMapOptions.defaults()
+        LocalCachedMapOptions<Object, Object> options = LocalCachedMapOptions.defaults()
                 .evictionPolicy(LocalCachedMapOptions.EvictionPolicy.LRU)
                 .syncStrategy(LocalCachedMapOptions.SyncStrategy.UPDATE)
                 .cacheSize(cacheSize);
+
+        // Check whether there are any custom config options for this mapType.
+        LocalCachedMapConfig config = cacheConfiguration.getLocalCachedMapConfig(cacheName);
+        if (config == null) {
+            return options;
+        }
+        // If config is present, override defaults
+        if (config.getCacheSize() != null) {
+            if (config.getCacheSize() >= 0) {
+                options.cacheSize(config.getCacheSize());
+            } else {
+                log.error("Invalid cacheSize {} for cache {}. Using {}", config.getCacheSize(), cacheName, cacheSize);
+            }
+        }
+        if (config.getTimeToLiveMillis() != null) {
+            if (config.getTimeToLiveMillis() >= 0) {
+                options.timeToLive(config.getTimeToLiveMillis());
+            } else {
+                log.error("Invalid timeToLiveMillis {} for cache {}. Ignoring", config.getTimeToLiveMillis(), cacheName);
+            }
+        }
+        if (config.getMaxIdleMillis() != null) {
+            if (config.getMaxIdleMillis() >= 0) {
+                options.maxIdle(config.getMaxIdleMillis());
+            } else {
+                log.error("Invalid maxIdleMillis {} for cache {}. Ignoring", config.getMaxIdleMillis(), cacheName);
+            }
+        }
+        LocalCachedMapOptions.EvictionPolicy evictionPolicy = parseOption(cacheName, "evictionPolicy",
+                config.getEvictionPolicy(), LocalCachedMapOptions.EvictionPolicy.class);
+        if (evictionPolicy != null) {
+            options.evictionPolicy(evictionPolicy);
+        }
+        LocalCachedMapOptions.SyncStrategy syncStrategy = parseOption(cacheName, "syncStrategy",
+                config.getSyncStrategy(), LocalCachedMapOptions.SyncStrategy.class);
+        if (syncStrategy != null) {
+            options.syncStrategy(syncStrategy);
+        }
+        LocalCachedMapOptions.ReconnectionStrategy reconnectionStrategy = parseOption(cacheName, "reconnectionStrategy",
+                config.getReconnectionStrategy(), LocalCachedMapOptions.ReconnectionStrategy.class);
+        if (reconnectionStrategy != null) {
+            options.reconnectionStrategy(reconnectionStrategy);
+        }
+        LocalCachedMapOptions.CacheProvider cacheProvider = parseOption(cacheName, "cacheProvider",
+                config.getCacheProvider(), LocalCachedMapOptions.CacheProvider.class);
+        if (cacheProvider != null) {
+            options.cacheProvider(cacheProvider);
+        }
+        // LOCALCACHE_ONLY is accepted as a more descriptive alias of redisson's LOCALCACHE store mode
+        String storeMode = "LOCALCACHE_ONLY".equalsIgnoreCase(config.getStoreMode()) ? "LOCALCACHE" : config.getStoreMode();
+        LocalCachedMapOptions.StoreMode parsedStoreMode = parseOption(cacheName, "storeMode",
+                storeMode, LocalCachedMapOptions.StoreMode.class);
+        if (parsedStoreMode != null) {
+            options.storeMode(parsedStoreMode);
+        }
+        return options;
     }
+
+    private static <E extends Enum<E>> E parseOption(String cacheName, String option, String value, Class<E> type) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid {} {} for cache {}. Allowed values are {}. Using default",
+                    option, value, cacheName, Arrays.toString(type.getEnumConstants()));
+            return null;
+        }
+    }
+
     @Override
     public Collection<String> getCacheNames() {
-        return null;
+        return Collections.unmodifiableSet(caches.keySet());
     }
 
-    private Class getClassTypeForEntity(String entityName) {
-        switch (entityName) {
-            case "product":
-                return Product.class;
-            default:
-                return null;
+    /**
+     * Registers the loader of single entities of a cache, used to refresh entries ahead of expiry when refresh-ahead
+     * is enabled in the cache's LocalCachedMapConfig.
+     */
+    public void registerLoader(String cacheName, Function<Object, Object> loader) {
+        loaders.put(cacheName, loader);
+        RedisCache cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.setRefreshLoader(loader);
         }
     }
 
+    /**
+     * The hot key recorders of all caches created so far, by cache name.
+     */
+    public Map<String, HotKeyRecorder> getHotKeyRecorders() {
+        return Collections.unmodifiableMap(hotKeyRecorders);
+    }
+
+    private Class getClassTypeForEntity(String cacheName) {
+        Class classType = entityRegistry.getClassType(cacheName);
+        if (classType == null) {
+            log.error("No entity type registered for cache {}. Entries will be read back as plain maps", cacheName);
+            return Object.class;
+        }
+        return classType;
+    }
+
 
     /**
      * Delete a specific local cache instance.
@@ -88,31 +254,45 @@ public class RedisCacheManager implements CacheManager {
      * This method would be useful when you have changed the cache configs and want to reinitialize the local cache
      * instances to use the new configs, while still leaving the central Cached data intact.
      *
-     * Calling this method should only delete the local cache on all java instances. At the next 'get'/'put' call
-     * the local cache will get recreated with the new configs. If it is a 'get' call, it will even check central cache
-     * for the required data before hitting DB.
+     * The cache instance is removed from the registry and it's RLocalCachedMap destroyed, which also unsubscribes the
+     * map's pub/sub listener. At the next 'get'/'put' call the local cache will get recreated with the new configs.
+     * If it is a 'get' call, it will even check central cache for the required data before hitting DB.
      *
-     * TODO - As of now this method does not work as it should.
-     * Current Behavior: This method will only delete the local cache instance from the current java instance only,
-     * Expected Behavior: This method should delete the local cache instance from all of the java instances.
+     * Note that this only deletes the local cache instance of the current java instance (although the clearing of its
+     * entries is synced by redis across all instances). To delete and rebuild the local caches of every java instance,
+     * broadcast the rebuild through {@link LocalCacheRebuildChannel}, which calls {@link #rebuildLocalCache} on each.
      *
      * Note on Clear vs Delete:
      *      Clear local cache = Clearing all entries from the local cache instance
      *      Delete local cache = Delete the local cache instance itself
      *                          (forcing it to be recreated with the new configs)
-     *
-     * Currently, even though this method will clear the local cache across all instances, it will not delete them and
-     * force them to be recreated with new configs across all instances. This is because the clearing of the cacheMap
-     * is handled under the hood by redis and synced across all instances, whereas the removal/deletion of the cacheMap
-     * entirely from 'caches' is an action on a regular HashMap, and so this would not be synced across all instances.
-     *
-     * Will need additional research into how this can be achieved. However, this is of very low priority as it
-     * has rarely been used.
      */
     public void deleteLocalCache(@NonNull String name) {
-        RedisCache cache = getCache(name);
+        RedisCache cache = caches.remove(name);
+        if (cache == null) {
+            log.info("Local CacheMap {} does not exist. Nothing to delete", name);
+            return;
+        }
         log.info("Deleting Local CacheMap {}", name);
         cache.clearLocalDataOnly();
-        caches.remove(name);
+        cache.destroy();
+    }
+
+    /**
+     * Delete the local cache instance of this java instance only, and, if it existed, immediately recreate it with the
+     * current configs. Central cached data is left intact and the entries are re-read from central cache on demand.
+     *
+     * Unlike {@link #deleteLocalCache}, this does not broadcast a clear to the other java instances, since it is meant
+     * to be called on every instance by {@link LocalCacheRebuildChannel}.
+     */
+    public void rebuildLocalCache(@NonNull String name) {
+        RedisCache cache = caches.remove(name);
+        if (cache == null) {
+            log.info("Local CacheMap {} does not exist. It will be created with the new configs on first use", name);
+            return;
+        }
+        log.info("Rebuilding Local CacheMap {}", name);
+        cache.destroy();
+        getCache(name);
     }
 }
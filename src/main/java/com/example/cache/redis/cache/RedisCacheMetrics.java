@@ -0,0 +1,216 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.compression.CompressionStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Performance counters of a single RedisCache.
+ *
+ * Counts are kept on LongAdders, so request threads never contend on a shared counter. Latencies are recorded per tier
+ * of the read path:
+ *      local  = lookup in the in-memory RLocalCachedMap of this java instance
+ *      redis  = lookup in central Redis cache after a local miss
+ *      loader = the valueLoader (usually a DB read) after a miss in both
+ *
+ * Everything is registered on the given MeterRegistry, so it is exported through actuator (/actuator/metrics/cache.*)
+ * tagged with the cache name.
+ */
+public class RedisCacheMetrics {
+
+    public static final String TIER_LOCAL = "local";
+    public static final String TIER_REDIS = "redis";
+    public static final String TIER_LOADER = "loader";
+
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder stalePuts = new LongAdder();
+
+    private final Timer localLatency;
+    private final Timer redisLatency;
+    private final Timer loaderLatency;
+    private final CompressionStats compression;
+
+    // The instant of time when this cache was created. Will help make better sense of the performance metrics
+    private final long createdAt = System.currentTimeMillis();
+
+    public RedisCacheMetrics(String cacheName, MeterRegistry registry) {
+        if (registry == null) {
+            // Keeps the timers usable (Eg: for /cache/performance) when there is no registry to export to
+            registry = new SimpleMeterRegistry();
+        }
+        Tags tags = Tags.of("cache", cacheName);
+
+        counter(registry, "cache.redis.gets", tags.and("result", "hit", "tier", TIER_LOCAL), localHits);
+        counter(registry, "cache.redis.gets", tags.and("result", "hit", "tier", TIER_REDIS), redisHits);
+        counter(registry, "cache.redis.gets", tags.and("result", "miss"), misses);
+        counter(registry, "cache.redis.puts", tags, puts);
+        counter(registry, "cache.redis.evictions", tags, evictions);
+        counter(registry, "cache.redis.loads", tags.and("result", "success"), loads);
+        counter(registry, "cache.redis.loads", tags.and("result", "failure"), loadFailures);
+        counter(registry, "cache.redis.refreshes", tags, refreshes);
+        counter(registry, "cache.redis.negative.hits", tags, negativeHits);
+        counter(registry, "cache.redis.puts.stale", tags, stalePuts);
+
+        localLatency = timer(registry, tags.and("tier", TIER_LOCAL));
+        redisLatency = timer(registry, tags.and("tier", TIER_REDIS));
+        loaderLatency = timer(registry, tags.and("tier", TIER_LOADER));
+        compression = new CompressionStats().register(registry, "cache.redis", tags);
+    }
+
+    private static void counter(MeterRegistry registry, String name, Tags tags, LongAdder adder) {
+        FunctionCounter.builder(name, adder, LongAdder::sum).tags(tags).register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, Tags tags) {
+        return Timer.builder("cache.redis.latency")
+                .tags(tags)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void recordLocalLookup(long nanos, boolean hit) {
+        recordLocalLookup(nanos, hit ? 1 : 0);
+    }
+
+    /**
+     * Records a (possibly bulk) lookup in the local map that found the given number of keys.
+     */
+    public void recordLocalLookup(long nanos, int hits) {
+        localLatency.record(nanos, TimeUnit.NANOSECONDS);
+        localHits.add(hits);
+    }
+
+    public void recordRedisLookup(long nanos, boolean hit) {
+        recordRedisLookup(nanos, hit ? 1 : 0, hit ? 0 : 1);
+    }
+
+    /**
+     * Records a (possibly bulk) lookup in central Redis that found the given number of keys and missed the rest.
+     */
+    public void recordRedisLookup(long nanos, int hits, int misses) {
+        redisLatency.record(nanos, TimeUnit.NANOSECONDS);
+        redisHits.add(hits);
+        this.misses.add(misses);
+    }
+
+    public void recordLoad(long nanos, boolean success) {
+        recordLoad(nanos, success ? 1 : 0, success);
+    }
+
+    /**
+     * Records a (possibly bulk) load through the loader that returned the given number of values.
+     */
+    public void recordLoad(long nanos, int values, boolean success) {
+        loaderLatency.record(nanos, TimeUnit.NANOSECONDS);
+        if (success) {
+            loads.add(values);
+        } else {
+            loadFailures.increment();
+        }
+    }
+
+    public void recordRefresh() {
+        refreshes.increment();
+    }
+
+    /**
+     * Records a hit on a negative entry. These are also counted as local or redis hits, depending on where they were found.
+     */
+    public void recordNegativeHit() {
+        negativeHits.increment();
+    }
+
+    /**
+     * Records a put that was dropped because the cache already held a newer version of the value.
+     */
+    public void recordStalePut() {
+        stalePuts.increment();
+    }
+
+    public void recordPuts(int count) {
+        puts.add(count);
+    }
+
+    public void recordEvictions(long count) {
+        evictions.add(count);
+    }
+
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    public long getRedisHits() {
+        return redisHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getPuts() {
+        return puts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public long getStalePuts() {
+        return stalePuts.sum();
+    }
+
+    /**
+     * Sizes of the values written by this java instance, before and after compression.
+     */
+    public CompressionStats getCompression() {
+        return compression;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public Timer getLatency(String tier) {
+        switch (tier) {
+            case TIER_LOCAL:
+                return localLatency;
+            case TIER_REDIS:
+                return redisLatency;
+            case TIER_LOADER:
+                return loaderLatency;
+            default:
+                throw new IllegalArgumentException("Unknown cache tier " + tier);
+        }
+    }
+}
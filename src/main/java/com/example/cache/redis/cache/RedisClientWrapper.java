@@ -1,9 +1,18 @@
 package com.example.cache.redis.cache;
 
 import org.redisson.api.LocalCachedMapOptions;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RBucket;
 import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
 import org.redisson.api.RMapCache;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -13,6 +22,9 @@ public class RedisClientWrapper {
     @Autowired(required = false)
     private RedissonClient client;
 
+    // Codec of the maps behind RedisCache. Built on first use, from the codec of the client
+    private volatile CacheEntryCodec cacheEntryCodec;
+
     /**
      * Get or create a localCachedMap with specified name and options.
      *
@@ -22,14 +34,88 @@ public class RedisClientWrapper {
      * instances are automatically synced by redis.
      *
      * All actions pertaining to keeping LocalCacheMaps in sync with Central Cache are handled under the hood.
+     *
+     * Values are the byte[] frames of CacheValueCodecs, stored as is (see CacheEntryCodec).
      */
     public RLocalCachedMap<Object, Object> getLocalCachedMap(String name, LocalCachedMapOptions<Object, Object> options) {
-        return client.getLocalCachedMap(name, options);
+        return client.getLocalCachedMap(name, getCacheEntryCodec(), options);
     }
 
     public RMapCache<Object, Object> getRMapCache(String name, LocalCachedMapOptions<Object, Object> options) {
         return client.getMapCache(name, options);
     }
 
+    /**
+     * Get a sorted set of strings with the given name.
+     */
+    public RScoredSortedSet<String> getScoredSortedSet(String name) {
+        return client.getScoredSortedSet(name, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Create a batch, to send several commands to redis in a single round trip.
+     */
+    public RBatch createBatch() {
+        return client.createBatch();
+    }
+
+    /**
+     * Get a bloom filter of strings with the given name. It has to be initialized with tryInit before use.
+     */
+    public RBloomFilter<String> getBloomFilter(String name) {
+        return client.getBloomFilter(name, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Get a bucket holding a single string value.
+     */
+    public RBucket<String> getBucket(String name) {
+        return client.getBucket(name, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Get the central redis hash behind the localCachedMap with the given name, bypassing its local cache.
+     */
+    public RMap<Object, Object> getCentralMap(String name) {
+        return client.getMap(name, getCacheEntryCodec());
+    }
+
+    private CacheEntryCodec getCacheEntryCodec() {
+        CacheEntryCodec codec = cacheEntryCodec;
+        if (codec == null) {
+            codec = new CacheEntryCodec(client.getConfig().getCodec());
+            cacheEntryCodec = codec;
+        }
+        return codec;
+    }
+
+    /**
+     * Get a plain (not locally cached) redis hash of strings with the given name.
+     */
+    public RMap<String, String> getMap(String name) {
+        return client.getMap(name, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Get a cluster-wide counter with the given name.
+     */
+    public RAtomicLong getAtomicLong(String name) {
+        return client.getAtomicLong(name);
+    }
+
+    /**
+     * Get a cluster-wide lock with the given name.
+     */
+    public RLock getLock(String name) {
+        return client.getLock(name);
+    }
+
+    /**
+     * Get a pub/sub topic with the given name. Messages are plain strings (JSON, where structured).
+     */
+    public RTopic getTopic(String name) {
+        return client.getTopic(name, StringCodec.INSTANCE);
+    }
+
 }
 
@@ -0,0 +1,89 @@
+package com.example.cache.redis.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Refresh-ahead policy of a single RedisCache.
+ *
+ * Tracks when each entry entered the local cache of this java instance and how often it has been read since. Once a
+ * frequently read entry has lived for refreshFactor of the local cache's time to live, a reload is submitted to a
+ * bounded background executor. Readers keep getting the current value in the meantime, and by the time the entry
+ * would have expired it has already been replaced by a fresh one, so hot entries never fall through to the DB.
+ */
+@Slf4j
+class RefreshAhead {
+
+    private final String cacheName;
+    private final long refreshAfterMillis;
+    private final int minReads;
+    private final Executor executor;
+
+    // Entries expire from here with the local cache's TTL, so this never tracks more than the local cache holds
+    private final Cache<Object, EntryAge> ages;
+
+    RefreshAhead(String cacheName, long timeToLiveMillis, double refreshFactor, int minReads, int maxEntries,
+                 Executor executor) {
+        this.cacheName = cacheName;
+        this.refreshAfterMillis = (long) (timeToLiveMillis * refreshFactor);
+        this.minReads = minReads;
+        this.executor = executor;
+        this.ages = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Called whenever a fresh value for the key enters the local cache.
+     */
+    void onCached(Object key) {
+        ages.put(key, new EntryAge(System.currentTimeMillis()));
+    }
+
+    /**
+     * Called on every local hit. Submits the refresh if the entry is hot and old enough, and isn't already refreshing.
+     */
+    void onLocalHit(Object key, Consumer<Object> refresh) {
+        EntryAge age = ages.get(key, k -> new EntryAge(System.currentTimeMillis()));
+        age.reads.increment();
+        if (System.currentTimeMillis() - age.cachedAt < refreshAfterMillis || age.reads.sum() < minReads
+                || !age.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh.accept(key);
+                } catch (Exception e) {
+                    log.error("Failed to refresh key {} of {} cache ahead of expiry", key, cacheName, e);
+                } finally {
+                    // A refreshed value resets the age of the entry through onCached, but one dropped as stale doesn't,
+                    // so the entry has to stay refreshable
+                    age.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The executor is saturated. The entry will simply be retried on a later read.
+            age.refreshing.set(false);
+        }
+    }
+
+    private static class EntryAge {
+        private final long cachedAt;
+        private final LongAdder reads = new LongAdder();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        EntryAge(long cachedAt) {
+            this.cachedAt = cachedAt;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.cache.redis.codec;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.avro.AvroMapper;
+import com.fasterxml.jackson.dataformat.avro.AvroSchema;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Avro, a schema-bound binary format. The schema is derived from the cached class, so only the field values are
+ * written (no property names at all), which makes this the most compact codec.
+ *
+ * The flip side is that the writer and the reader must agree on the schema: only use it for caches holding a single
+ * POJO type, and clear the cache when that type changes shape.
+ */
+public class AvroCacheValueCodec implements CacheValueCodec {
+
+    public static final byte ID = 3;
+    public static final String NAME = "AVRO";
+
+    private final AvroMapper mapper = new AvroMapper();
+
+    // Schema generation is expensive, so readers/writers are bound once per type
+    private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream out) throws IOException {
+        writers.computeIfAbsent(value.getClass(), type -> mapper.writer(schemaFor(type))).writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(t).with(schemaFor(t))).readValue(data, offset, length);
+    }
+
+    private AvroSchema schemaFor(Class<?> type) {
+        try {
+            return mapper.schemaFor(type);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cannot derive avro schema for " + type.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.cache.redis.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Serializes the values stored in a RedisCache to and from bytes.
+ *
+ * Every cached value is prefixed with the id of the codec that wrote it (see {@link CacheValueCodecs}), so the codec
+ * of a cache can be changed through its LocalCachedMapConfig without making the entries already in Redis unreadable.
+ */
+public interface CacheValueCodec {
+
+    /**
+     * The header byte written in front of every value encoded by this codec. Must be unique across codecs.
+     */
+    byte getId();
+
+    /**
+     * The name used to select this codec in LocalCachedMapConfig. Eg: JSON, SMILE, AVRO
+     */
+    String getName();
+
+    void encode(Object value, OutputStream out) throws IOException;
+
+    <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException;
+}
@@ -0,0 +1,130 @@
+package com.example.cache.redis.codec;
+
+import com.example.cache.compression.CompressionStats;
+import com.example.cache.compression.ValueCompression;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Registry of the available {@link CacheValueCodec}s, and the framing shared by all of them.
+ *
+ * Every encoded value is laid out as [codec id][payload]. Decoding looks the codec up from the first byte, so values
+ * written with different codecs can sit side by side in the same cache.
+ *
+ * Values over the compression threshold of their cache are compressed, and then laid out as [codec id | 0x40][zstd
+ * frame of the payload]. Compressed and uncompressed values are likewise told apart by the first byte.
+ *
+ * The id 0 is reserved for negative entries, laid out as [0][expiry epoch millis]. They record that a key is known to
+ * have no value, and carry their own expiry since entries of a RLocalCachedMap can't have individual TTLs.
+ */
+@Slf4j
+public class CacheValueCodecs {
+
+    public static final CacheValueCodec JSON = new JsonCacheValueCodec();
+    public static final CacheValueCodec SMILE = new SmileCacheValueCodec();
+    public static final CacheValueCodec AVRO = new AvroCacheValueCodec();
+
+    public static final CacheValueCodec DEFAULT = JSON;
+
+    private static final byte NEGATIVE_ENTRY_ID = 0;
+    private static final int NEGATIVE_ENTRY_LENGTH = 1 + Long.BYTES;
+    private static final byte COMPRESSED_FLAG = 0x40;
+
+    private static final CacheValueCodec[] BY_ID = new CacheValueCodec[Byte.MAX_VALUE + 1];
+    private static final Map<String, CacheValueCodec> BY_NAME = new HashMap<>();
+
+    static {
+        for (CacheValueCodec codec : Arrays.asList(JSON, SMILE, AVRO)) {
+            BY_ID[codec.getId()] = codec;
+            BY_NAME.put(codec.getName(), codec);
+        }
+    }
+
+    private CacheValueCodecs() { }
+
+    /**
+     * Returns the codec with the given name, falling back to the default codec if the name is empty or unknown.
+     */
+    public static CacheValueCodec forName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT;
+        }
+        CacheValueCodec codec = BY_NAME.get(name.toUpperCase(Locale.ROOT));
+        if (codec == null) {
+            log.error("Unknown cache value codec {}. Falling back to {}", name, DEFAULT.getName());
+            return DEFAULT;
+        }
+        return codec;
+    }
+
+    public static byte[] encode(CacheValueCodec codec, Object value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        out.write(codec.getId());
+        try {
+            codec.encode(value, out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to encode " + value.getClass().getName()
+                    + " with " + codec.getName() + " codec", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the value, and compresses its payload if it is at least compressionThreshold bytes (0 = never).
+     */
+    public static byte[] encode(CacheValueCodec codec, Object value, int compressionThreshold, CompressionStats stats) {
+        byte[] encoded = encode(codec, value);
+        byte[] compressed = ValueCompression.compress((byte) (codec.getId() | COMPRESSED_FLAG), encoded, 1,
+                encoded.length - 1, compressionThreshold, stats);
+        return compressed != null ? compressed : encoded;
+    }
+
+    /**
+     * Encodes a negative entry, that expires at the given epoch millis.
+     */
+    public static byte[] encodeNegative(long expiresAt) {
+        return ByteBuffer.allocate(NEGATIVE_ENTRY_LENGTH).put(NEGATIVE_ENTRY_ID).putLong(expiresAt).array();
+    }
+
+    public static boolean isNegative(Object value) {
+        return value instanceof byte[] && ((byte[]) value).length == NEGATIVE_ENTRY_LENGTH
+                && ((byte[]) value)[0] == NEGATIVE_ENTRY_ID;
+    }
+
+    /**
+     * The epoch millis at which a negative entry written by {@link #encodeNegative} expires.
+     */
+    public static long negativeExpiresAt(byte[] value) {
+        return ByteBuffer.wrap(value, 1, Long.BYTES).getLong();
+    }
+
+    /**
+     * Decodes a value written by {@link #encode}, using whichever codec it was written with, and decompressing it if
+     * needed. Returns null if the value cannot be decoded.
+     */
+    public static <T> T decode(byte[] data, Class<T> type) {
+        byte id = data.length > 0 ? (byte) (data[0] & ~COMPRESSED_FLAG) : 0;
+        if (data.length == 0 || id <= 0 || BY_ID[id] == null) {
+            log.error("Unknown cache value codec header in value of type {}", type.getName());
+            return null;
+        }
+        CacheValueCodec codec = BY_ID[id];
+        try {
+            if ((data[0] & COMPRESSED_FLAG) != 0) {
+                byte[] payload = ValueCompression.decompress(data);
+                return codec.decode(payload, 0, payload.length, type);
+            }
+            return codec.decode(data, 1, data.length - 1, type);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to decode {} with {} codec", type.getName(), codec.getName(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.cache.redis.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Plain JSON, written and read in a single streaming pass as UTF-8 bytes.
+ *
+ * Unlike JsonUtil.fromJsonString, which first parses into a JsonNode tree and then converts the tree, this binds
+ * straight from the bytes to the target type.
+ */
+public class JsonCacheValueCodec implements CacheValueCodec {
+
+    public static final byte ID = 1;
+    public static final String NAME = "JSON";
+
+    private final ObjectMapper mapper;
+
+    public JsonCacheValueCodec() {
+        this(new ObjectMapper());
+    }
+
+    protected JsonCacheValueCodec(ObjectMapper mapper) {
+        // Cached values may have been written by an older version of the model
+        this.mapper = mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void encode(Object value, OutputStream out) throws IOException {
+        mapper.writeValue(out, value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> type) throws IOException {
+        return mapper.readValue(data, offset, length, type);
+    }
+}
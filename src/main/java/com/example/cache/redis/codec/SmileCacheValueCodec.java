@@ -0,0 +1,33 @@
+package com.example.cache.redis.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileParser;
+
+/**
+ * Smile, the binary form of JSON. Same data model as JSON (so any type the JSON codec handles works here too), but
+ * smaller and cheaper to parse: numbers are binary, and repeated property names are back-referenced.
+ */
+public class SmileCacheValueCodec extends JsonCacheValueCodec {
+
+    public static final byte ID = 2;
+    public static final String NAME = "SMILE";
+
+    public SmileCacheValueCodec() {
+        super(new ObjectMapper(new SmileFactory()
+                // Each value is a document of its own, so the smile header is redundant with our own header byte
+                .configure(SmileGenerator.Feature.WRITE_HEADER, false)
+                .configure(SmileParser.Feature.REQUIRE_HEADER, false)));
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
@@ -8,9 +8,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Configuration
 @Slf4j
@@ -19,7 +19,8 @@ public class CacheConfiguration {
     @Autowired
     private CacheConfigRepository cacheConfigRepository;
 
-    private Map<String, CacheConfig> cacheConfigMap = new HashMap<>();
+    // Read by request threads while the configs may be cleared by a cluster-wide local cache rebuild
+    private Map<String, CacheConfig> cacheConfigMap = new ConcurrentHashMap<>();
 
     /**
      * Returns the CacheConfig for a particular database.
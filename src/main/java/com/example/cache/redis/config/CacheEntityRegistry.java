@@ -0,0 +1,53 @@
+package com.example.cache.redis.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each cache to the type of the entity it stores, so that cached data can be deserialized back to it's original
+ * type. Entities are registered in application.properties, so adding one needs no code change:
+ *
+ *      cache.redis.entity-types.product=com.example.cache.redis.model.Product
+ *
+ * A cache name resolves either directly (Eg: product) or through the entity part of a 'database_entity' name
+ * (Eg: Product_product).
+ */
+@Component
+@ConfigurationProperties(prefix = "cache.redis")
+@Slf4j
+public class CacheEntityRegistry {
+
+    private Map<String, Class<?>> entityTypes = new HashMap<>();
+
+    // Cache names already resolved through their entity part, so that repeated lookups don't split the name again
+    private final Map<String, Class<?>> resolvedTypes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the entity type for the given cache name, or null if no type is registered for it.
+     */
+    public Class<?> getClassType(String cacheName) {
+        Class<?> type = entityTypes.get(cacheName);
+        if (type != null) {
+            return type;
+        }
+        return resolvedTypes.computeIfAbsent(cacheName, name -> {
+            int separator = name.indexOf('_');
+            return separator < 0 ? null : entityTypes.get(name.substring(separator + 1));
+        });
+    }
+
+    public Map<String, Class<?>> getEntityTypes() {
+        return entityTypes;
+    }
+
+    public void setEntityTypes(Map<String, Class<?>> entityTypes) {
+        log.info("Registering cached entity types {}", entityTypes);
+        this.entityTypes = entityTypes;
+        this.resolvedTypes.clear();
+    }
+}
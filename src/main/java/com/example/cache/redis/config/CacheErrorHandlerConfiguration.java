@@ -0,0 +1,44 @@
+package com.example.cache.redis.config;
+
+import com.example.cache.redis.cache.CacheCleaner;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.annotation.CachingConfigurerSupport;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.interceptor.SimpleCacheErrorHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Handles errors of the cache operations of the @Cacheable/@CachePut/@CacheEvict annotations.
+ *
+ * A failed evict or put must not fail the request, since the DB write already happened, but it can leave a stale
+ * value in the cache. Both are recorded in the outbox of the CacheCleaner, which retries the eviction.
+ * Failed gets and clears are handled like Spring's default.
+ */
+@Configuration
+@Slf4j
+public class CacheErrorHandlerConfiguration extends CachingConfigurerSupport {
+
+    @Lazy
+    @Autowired
+    private CacheCleaner cacheCleaner;
+
+    @Override
+    public CacheErrorHandler errorHandler() {
+        return new SimpleCacheErrorHandler() {
+            @Override
+            public void handleCachePutError(RuntimeException exception, Cache cache, Object key, Object value) {
+                log.error("Failed to put key {} into {} cache", key, cache.getName(), exception);
+                cacheCleaner.recordFailedEviction(cache.getName(), key, exception);
+            }
+
+            @Override
+            public void handleCacheEvictError(RuntimeException exception, Cache cache, Object key) {
+                log.error("Failed to evict key {} from {} cache", key, cache.getName(), exception);
+                cacheCleaner.recordFailedEviction(cache.getName(), key, exception);
+            }
+        };
+    }
+}
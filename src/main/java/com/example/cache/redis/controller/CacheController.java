@@ -1,22 +1,27 @@
 package com.example.cache.redis.controller;
 
 
+import com.example.cache.redis.cache.CacheCleaner;
+import com.example.cache.redis.cache.LocalCacheRebuildChannel;
 import com.example.cache.redis.cache.RedisCache;
 import com.example.cache.redis.cache.RedisCacheManager;
 import com.example.cache.redis.config.CacheConfiguration;
+import com.example.cache.redis.dto.CacheMetrics;
 import com.example.cache.redis.dto.ClearCacheRequest;
 import com.example.cache.redis.model.CacheConfig;
+import com.example.cache.routing.RoutingCacheManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static com.example.cache.redis.util.CacheUtil.getCacheMapName;
@@ -27,6 +32,7 @@ import static com.example.cache.redis.util.CacheUtil.getCacheMapName;
  *
  *
  * NOTE: The /cache/clear* routes clear the cache entry from BOTH Local instances and central Redis cache as well
+ *       (and from every other tier of the cache, see RoutingCacheManager)
  *       The /cache/refresh* routes clear cache ONLY from the local instances, leaving the central Redis cache intact
  *       The /cacheConfig/clear route clears the cacheConfigs from memory, forcing a re-read of the configs from DB
  */
@@ -41,6 +47,15 @@ public class CacheController {
     @Autowired
     private RedisCacheManager cacheManager;
 
+    @Autowired
+    private RoutingCacheManager routingCacheManager;
+
+    @Autowired
+    private LocalCacheRebuildChannel rebuildChannel;
+
+    @Autowired
+    private CacheCleaner cacheCleaner;
+
     @Value("${cache.accessToken}")
     private String cacheAccessToken;
 
@@ -61,8 +76,7 @@ public class CacheController {
         }
         String cacheMap = getCacheMapName(clearCacheRequest.getDatabase(), clearCacheRequest.getEntity());
         try {
-            RedisCache cache = cacheManager.getCache(cacheMap);
-            cache.evict(clearCacheRequest.getIds());
+            routingCacheManager.evict(cacheMap, clearCacheRequest.getIds());
         } catch (Exception e) {
             log.error("Error in invalidating cache for cacheMap {} with ids {}", cacheMap, clearCacheRequest.getIds());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -86,9 +100,7 @@ public class CacheController {
         CacheConfig cacheConfig = cacheConfiguration.getCacheConfig(clearCacheRequest.getDatabase());
         if (cacheConfig != null) {
             for (String entity: cacheConfig.getEnabledEntities()) {
-                String cacheName = getCacheMapName(clearCacheRequest.getDatabase(), entity);
-                RedisCache cache = cacheManager.getCache(cacheName);
-                cache.clear();
+                routingCacheManager.clear(getCacheMapName(clearCacheRequest.getDatabase(), entity));
             }
         }
         return ResponseEntity.status(HttpStatus.OK).build();
@@ -108,9 +120,7 @@ public class CacheController {
         List<CacheConfig> cacheConfigs = cacheConfiguration.getAllCacheConfigs();
         for (CacheConfig cacheConfig: cacheConfigs) {
             for (String entity: cacheConfig.getEnabledEntities()) {
-                String cacheName = getCacheMapName(cacheConfig.getDatabase(), entity);
-                RedisCache cache = cacheManager.getCache(cacheName);
-                cache.clear();
+                routingCacheManager.clear(getCacheMapName(cacheConfig.getDatabase(), entity));
             }
         }
         return ResponseEntity.status(HttpStatus.OK).build();
@@ -138,6 +148,9 @@ public class CacheController {
     /**
      * Clear an entire CacheMap from Local Cache ONLY.
      * The local cache maps will be rebuilt using new configs, and will re-read cached values from central cache
+     *
+     * The rebuild is broadcast to all java instances. The response lists the instances that acknowledged it, and is
+     * marked complete once every instance has.
      */
     @PostMapping("/cache/refreshMap")
     public ResponseEntity refreshSingleLocalCacheMap(@RequestBody ClearCacheRequest clearCacheRequest,
@@ -148,8 +161,7 @@ public class CacheController {
         }
 
         String cacheName = getCacheMapName(clearCacheRequest.getDatabase(), clearCacheRequest.getEntity());
-        cacheManager.deleteLocalCache(cacheName);
-        return ResponseEntity.status(HttpStatus.OK).build();
+        return ResponseEntity.ok(rebuildChannel.broadcastRebuild(Collections.singletonList(cacheName)));
     }
 
     /**
@@ -164,14 +176,14 @@ public class CacheController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
+        List<String> cacheNames = new ArrayList<>();
         CacheConfig cacheConfig = cacheConfiguration.getCacheConfig(clearCacheRequest.getDatabase());
         if (cacheConfig != null) {
             for (String entity: cacheConfig.getEnabledEntities()) {
-                String cacheName = getCacheMapName(clearCacheRequest.getDatabase(), entity);
-                cacheManager.deleteLocalCache(cacheName);
+                cacheNames.add(getCacheMapName(clearCacheRequest.getDatabase(), entity));
             }
         }
-        return ResponseEntity.status(HttpStatus.OK).build();
+        return ResponseEntity.ok(rebuildChannel.broadcastRebuild(cacheNames));
     }
 
     /**
@@ -185,29 +197,31 @@ public class CacheController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
+        List<String> cacheNames = new ArrayList<>();
         List<CacheConfig> cacheConfigs = cacheConfiguration.getAllCacheConfigs();
         for (CacheConfig cacheConfig: cacheConfigs) {
             for (String entity: cacheConfig.getEnabledEntities()) {
-                String cacheName = getCacheMapName(cacheConfig.getDatabase(), entity);
-                cacheManager.deleteLocalCache(cacheName);
+                cacheNames.add(getCacheMapName(cacheConfig.getDatabase(), entity));
             }
         }
-        return ResponseEntity.status(HttpStatus.OK).build();
+        return ResponseEntity.ok(rebuildChannel.broadcastRebuild(cacheNames));
     }
 
     /**
-     * API to clear the failed cache for a specific set of entries of a particular CacheMap.
-     * Will run periodically to clear out the invalid cache.
+     * API to clear the cache entries whose invalidation failed, right away.
      * Clears from BOTH Local and Central Cache
      *
-     * Fetches invalid cache entries from db and then clears them. Scheduled for every hour.
+     * Fetches the failed invalidations that are due from the outbox in DB and then clears them. The CacheCleaner also
+     * does this periodically, every cache.redis.outbox.retryIntervalMillis. Returns the number of cleared entries.
      */
-    @Scheduled(cron = "0 0 * * * ?") //scheduled for every hour
     @GetMapping("/cache/clearInvalidated")
-    public ResponseEntity clearFailedInvalidatedCache() {
-        log.info("Scheduling cache clear!!!");
-        //cacheCleaner.clearInvalidCache();
-        return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    public ResponseEntity clearFailedInvalidatedCache(@RequestHeader(required = false) String accessToken) {
+        if (!validateToken(accessToken)) {
+            log.error(ERROR_TOKEN_MISSING);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        log.info("Clearing failed invalidations");
+        return ResponseEntity.ok(cacheCleaner.clearInvalidCache());
     }
 
     /**
@@ -217,23 +231,22 @@ public class CacheController {
         return (cacheAccessToken.equalsIgnoreCase(accessToken));
     }
 
-    /*
-     Returns the cache hits/misses/put performance metrics for all currently existing caches
+    /**
+     * Returns the cache hits/misses/put performance metrics for all currently existing caches
+     */
     @GetMapping("/cache/performance")
     public ResponseEntity getPerformanceMetrics(@RequestHeader(required = false) String accessToken) {
         if (!validateToken(accessToken)) {
             log.error(ERROR_TOKEN_MISSING);
-            return forbidden();
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
 
-        List<String> cacheNames = cacheManager.getCacheNames();
         List<CacheMetrics> metrics = new ArrayList<>();
-        for (String cacheName: cacheNames) {
+        for (String cacheName: cacheManager.getCacheNames()) {
             RedisCache cache = cacheManager.getCache(cacheName);
             metrics.add(new CacheMetrics(cache));
         }
-        return ok(metrics);
+        return ResponseEntity.ok(metrics);
     }
-    */
 
 }
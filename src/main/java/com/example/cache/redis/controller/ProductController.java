@@ -1,12 +1,13 @@
 package com.example.cache.redis.controller;
 
+import com.example.cache.redis.dto.ProductPage;
 import com.example.cache.redis.model.Product;
 import com.example.cache.redis.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Optional;
 
 @RestController
 public class ProductController {
@@ -14,13 +15,42 @@ public class ProductController {
     @Autowired
     private ProductService productService;
 
+    // Serve /product/{id} asynchronously, releasing the request thread while waiting on Redis or the DB
+    @Value("${product.async.enabled:false}")
+    private boolean asyncEnabled;
+
     @GetMapping(value = "/product")
     public List<Product> getAllProducts(){
         return productService.getAllProduct();
     }
 
+    /**
+     * A page of products ordered by id, Eg: /product/page?page=0&size=20
+     */
+    @GetMapping(value = "/product/page")
+    public ProductPage getProductPage(@RequestParam(defaultValue = "0") int page,
+                                      @RequestParam(defaultValue = "20") int size){
+        return productService.getProductPage(page, size);
+    }
+
+    /**
+     * Batch lookup of products, Eg: /product/batch?ids=1,2,3
+     * Returns the products that exist, in the order of the requested ids.
+     */
+    @GetMapping(value = "/product/batch")
+    public List<Product> findProductsByIds(@RequestParam List<String> ids){
+        return productService.findProductsByIds(ids);
+    }
+
+    /**
+     * Returns the optional product directly, or a CompletableFuture of it when async is enabled. Spring picks the
+     * return value handler from the returned value, so only async requests go through an async dispatch.
+     */
     @GetMapping(value = "/product/{id}")
-    public Optional<Product> findProductById(@PathVariable String id){
+    public Object findProductById(@PathVariable String id){
+        if (asyncEnabled) {
+            return productService.findProductByIdAsync(id);
+        }
         return productService.findProductById(id);
     }
 
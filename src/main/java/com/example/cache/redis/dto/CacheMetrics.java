@@ -0,0 +1,89 @@
+package com.example.cache.redis.dto;
+
+import com.example.cache.redis.cache.RedisCache;
+import com.example.cache.redis.cache.RedisCacheMetrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the hit/miss/put performance metrics of a single cache, as returned by /cache/performance.
+ */
+@Data
+public class CacheMetrics {
+
+    private String name;
+    private long createdAt;
+    // Number of entries in the local in-memory map of this java instance. Compare against the configured cacheSize.
+    private int localSize;
+    private long localHits;
+    private long redisHits;
+    private long misses;
+    private double hitRatio;
+    private long puts;
+    private long evictions;
+    private long loads;
+    private long loadFailures;
+    private long deduplicatedLoads;
+    // Entries reloaded ahead of their expiry
+    private long refreshes;
+    // Hits on keys cached as having no value. Included in localHits/redisHits
+    private long negativeHits;
+    // Puts dropped because the cache already held a newer version
+    private long stalePuts;
+    // Values written with a compressed payload, and raw over stored size of all the values written
+    private long compressedValues;
+    private double compressionRatio;
+    // Latency per tier (local, redis, loader) in milliseconds
+    private Map<String, Latency> latency = new LinkedHashMap<>();
+
+    public CacheMetrics(RedisCache cache) {
+        RedisCacheMetrics metrics = cache.getMetrics();
+        this.name = cache.getName();
+        this.createdAt = metrics.getCreatedAt();
+        this.localSize = cache.getLocalSize();
+        this.localHits = metrics.getLocalHits();
+        this.redisHits = metrics.getRedisHits();
+        this.misses = metrics.getMisses();
+        long gets = localHits + redisHits + misses;
+        this.hitRatio = gets == 0 ? 0 : (double) (localHits + redisHits) / gets;
+        this.puts = metrics.getPuts();
+        this.evictions = metrics.getEvictions();
+        this.loads = metrics.getLoads();
+        this.loadFailures = metrics.getLoadFailures();
+        this.deduplicatedLoads = cache.getDeduplicatedLoadCount();
+        this.refreshes = metrics.getRefreshes();
+        this.negativeHits = metrics.getNegativeHits();
+        this.stalePuts = metrics.getStalePuts();
+        this.compressedValues = metrics.getCompression().getCompressedValues();
+        this.compressionRatio = metrics.getCompression().getRatio();
+        for (String tier : new String[] {RedisCacheMetrics.TIER_LOCAL, RedisCacheMetrics.TIER_REDIS,
+                RedisCacheMetrics.TIER_LOADER}) {
+            latency.put(tier, new Latency(metrics.getLatency(tier)));
+        }
+    }
+
+    @Data
+    public static class Latency {
+        private long count;
+        private double mean;
+        private double max;
+        private Map<String, Double> percentiles = new LinkedHashMap<>();
+
+        Latency(Timer timer) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            this.count = snapshot.count();
+            this.mean = snapshot.mean(TimeUnit.MILLISECONDS);
+            this.max = snapshot.max(TimeUnit.MILLISECONDS);
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                percentiles.put("p" + Math.round(percentile.percentile() * 100),
+                        percentile.value(TimeUnit.MILLISECONDS));
+            }
+        }
+    }
+}
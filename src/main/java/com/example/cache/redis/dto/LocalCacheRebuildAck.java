@@ -0,0 +1,19 @@
+package com.example.cache.redis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sent back by every java instance once it has handled a {@link LocalCacheRebuildMessage}.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocalCacheRebuildAck {
+
+    private String requestId;
+    private String instanceId;
+    private boolean success;
+    private String error;
+}
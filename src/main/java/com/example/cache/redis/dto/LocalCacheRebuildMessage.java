@@ -0,0 +1,23 @@
+package com.example.cache.redis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Broadcast to every java instance to make it drop and rebuild the named local caches.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class LocalCacheRebuildMessage {
+
+    private String requestId;
+    // The instance that triggered the rebuild
+    private String origin;
+    private List<String> cacheNames;
+    // Whether the CacheConfigs should be re-read from DB before rebuilding
+    private boolean reloadConfigs;
+}
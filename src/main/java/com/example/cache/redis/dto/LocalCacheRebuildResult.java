@@ -0,0 +1,22 @@
+package com.example.cache.redis.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a cluster-wide local cache rebuild, as returned by the /cache/refresh* routes.
+ */
+@Data
+public class LocalCacheRebuildResult {
+
+    private String requestId;
+    private List<String> cacheNames;
+    // Number of java instances that received the rebuild broadcast
+    private long expectedInstances;
+    private List<String> acknowledgedInstances = new ArrayList<>();
+    private List<String> failedInstances = new ArrayList<>();
+    // True once every instance that received the broadcast has acknowledged it
+    private boolean complete;
+}
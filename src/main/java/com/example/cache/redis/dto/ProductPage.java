@@ -0,0 +1,20 @@
+package com.example.cache.redis.dto;
+
+import com.example.cache.redis.model.Product;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * A page of products, as returned by /product/page.
+ */
+@Data
+@AllArgsConstructor
+public class ProductPage {
+
+    private int page;
+    private int size;
+    private long totalElements;
+    private List<Product> products;
+}
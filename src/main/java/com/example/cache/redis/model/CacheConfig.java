@@ -4,6 +4,7 @@ package com.example.cache.redis.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
 
 import java.util.List;
 import java.util.Map;
@@ -13,7 +14,8 @@ import java.util.Map;
 @NoArgsConstructor
 public class CacheConfig {
 
-    // The database for which these configurations apply.
+    // The database for which these configurations apply. CacheConfigs are looked up by database.
+    @Id
     private String database;
     // The list of entities/models for which caching is enabled
     private List<String> enabledEntities;
@@ -0,0 +1,29 @@
+package com.example.cache.redis.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A cache invalidation that failed (Eg: during a redis outage), and is pending a retry by the CacheCleaner.
+ */
+@Data
+@NoArgsConstructor
+@Document("cacheInvalidationOutbox")
+public class CacheInvalidation {
+
+    // cacheName:key, so that repeated failures for the same key are recorded once
+    @Id
+    private String id;
+    private String cacheName;
+    // The key to evict. Null if the whole cache has to be cleared
+    private Object key;
+    // Number of retries that failed so far
+    private int attempts;
+    // Epoch millis after which the next retry is due
+    private long nextAttemptAt;
+    // Epoch millis of the last failure. A retry only removes the entry if no newer failure was recorded meanwhile
+    private long lastFailedAt;
+    private String lastError;
+}
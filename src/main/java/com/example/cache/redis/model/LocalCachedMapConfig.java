@@ -2,8 +2,51 @@ package com.example.cache.redis.model;
 
 import lombok.Data;
 
+import java.util.List;
+
+/**
+ * Custom settings for the local cache of a single entity. Every setting is optional; unset settings keep the defaults
+ * of RedisCacheManager.getOptions.
+ */
 @Data
 public class LocalCachedMapConfig {
 
+    // Max number of entries in the local cache. 0 means unbounded
     private Integer cacheSize;
+    // Time after which a local entry expires, counted from when it was cached locally. 0 means never
+    private Long timeToLiveMillis;
+    // Time after which a local entry expires if it wasn't read. 0 means never
+    private Long maxIdleMillis;
+    // NONE, LRU, LFU, SOFT or WEAK
+    private String evictionPolicy;
+    // How the local caches of other instances are kept in sync on updates: NONE, INVALIDATE or UPDATE
+    private String syncStrategy;
+    // What to do with the local cache after a reconnect to redis: NONE, CLEAR or LOAD
+    private String reconnectionStrategy;
+    // Implementation backing the local cache: REDISSON or CAFFEINE
+    private String cacheProvider;
+    // LOCALCACHE_REDIS (local + central cache) or LOCALCACHE / LOCALCACHE_ONLY (local cache only, synced over pub/sub)
+    private String storeMode;
+    // Codec used to serialize the cached values: JSON (default), SMILE or AVRO
+    private String codec;
+    // Values whose serialized size is at least this many bytes are compressed. Unset or 0 means never
+    private Integer compressionThresholdBytes;
+    // Take a redisson lock while loading a missing key, so only one java instance loads it from DB
+    private Boolean distributedLoadLock;
+    private Long loadLockWaitMillis;
+    private Long loadLockLeaseMillis;
+    // Max time a caller waits on another caller's load of the same key before giving up. Defaults to 10000
+    private Long loadWaitMillis;
+    // Reload frequently read entries in the background before they expire. Requires timeToLiveMillis
+    private Boolean refreshAhead;
+    // Fraction of timeToLiveMillis after which an entry is refreshed. Defaults to 0.75
+    private Double refreshAheadFactor;
+    // Min number of local reads for an entry to be considered hot enough to refresh. Defaults to 10
+    private Integer refreshAheadMinReads;
+    // How long a key known to have no value (Eg: a missing product) is cached as such. 0 disables negative caching.
+    // Defaults to cache.redis.negativeTtlMillis
+    private Long negativeTtlMillis;
+    // Backends of the cache, fastest first: any of local, redis, aerospike. Defaults to redis. See RoutingCacheManager.
+    // The local tier expires after timeToLiveMillis, or cache.routing.local.defaultTimeToLiveMillis if unset
+    private List<String> tiers;
 }
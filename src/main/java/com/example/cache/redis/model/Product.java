@@ -11,10 +11,16 @@ import java.io.Serializable;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class Product implements Serializable {
+public class Product implements Serializable, Versioned {
 
     @Id
     private String id;
     private String productCategory;
     private String productName;
+    // Epoch millis of the last save
+    private Long version;
+
+    public Product(String id, String productCategory, String productName) {
+        this(id, productCategory, productName, null);
+    }
 }
@@ -0,0 +1,21 @@
+package com.example.cache.redis.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A page of the product list, holding only the ids of its products. The products themselves are resolved through the
+ * product cache, so that a product update never has to touch the cached pages. The total number of products is cached
+ * separately, see ProductPageIndex.getTotalElements.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProductIdPage implements Serializable {
+
+    private List<String> ids;
+}
@@ -0,0 +1,13 @@
+package com.example.cache.redis.model;
+
+/**
+ * An entity whose cached copies can be ordered, so that an older copy never replaces a newer one in the cache.
+ * See RedisCache.putIfNewer, also for the limits of this ordering (no tombstones for deleted entries, clock skew).
+ */
+public interface Versioned {
+
+    /**
+     * Increases with every change of the entity. Null for entities saved before they were versioned.
+     */
+    Long getVersion();
+}
@@ -0,0 +1,12 @@
+package com.example.cache.redis.repository;
+
+import com.example.cache.redis.model.CacheInvalidation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+import java.util.List;
+
+public interface CacheInvalidationRepository extends MongoRepository<CacheInvalidation,String> {
+
+    List<CacheInvalidation> findByNextAttemptAtLessThanEqual(long now, Pageable pageable);
+}
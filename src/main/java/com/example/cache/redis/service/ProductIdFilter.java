@@ -0,0 +1,145 @@
+package com.example.cache.redis.service;
+
+import com.example.cache.redis.cache.RedisClientWrapper;
+import com.example.cache.redis.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBloomFilter;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis bloom filter of the ids of all existing products, used to reject lookups of unknown ids before they reach the
+ * cache or the DB.
+ *
+ * The filter is shared by all java instances. The first instance to start with an uninitialized filter fills it from
+ * the DB in the background, and marks it as ready when done. Until then every id is treated as possibly existing.
+ *
+ * Ids are added on every save. Ids can't be removed from a bloom filter, so deleted products keep passing the filter and
+ * are instead caught by the negative cache entries of the product cache.
+ */
+@Slf4j
+@Component
+public class ProductIdFilter implements ApplicationRunner {
+
+    private static final String FILTER_NAME = "product:ids:bloom";
+    private static final String READY_FLAG_NAME = FILTER_NAME + ":ready";
+    private static final String INIT_LOCK_NAME = FILTER_NAME + ":init";
+
+    // How often an instance checks whether the filter is (still) ready
+    private static final long READY_CHECK_INTERVAL_MILLIS = 5000;
+
+    @Value("${product.idFilter.enabled:false}")
+    private boolean enabled;
+
+    @Value("${product.idFilter.expectedInsertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${product.idFilter.falseProbability:0.01}")
+    private double falseProbability;
+
+    @Autowired
+    private RedisClientWrapper redisClientWrapper;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private volatile boolean ready;
+    private volatile long readyCheckedAt;
+
+    /**
+     * Returns false only if the product with the given id definitely doesn't exist.
+     */
+    public boolean mightContain(String id) {
+        if (!enabled || id == null || !isReady()) {
+            return true;
+        }
+        try {
+            return redisClientWrapper.getBloomFilter(FILTER_NAME).contains(id);
+        } catch (Exception e) {
+            log.error("[mightContain] Error checking product id {} against the id filter", id, e);
+            return true;
+        }
+    }
+
+    /**
+     * Adds the id of a saved product to the filter.
+     */
+    public void add(String id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        try {
+            redisClientWrapper.getBloomFilter(FILTER_NAME).add(id);
+        } catch (Exception e) {
+            // A missing id would make its product unreachable. Stop using the filter until it is rebuilt.
+            log.error("[add] Error adding product id {} to the id filter. Disabling the filter until it is rebuilt", id, e);
+            redisClientWrapper.getBucket(READY_FLAG_NAME).delete();
+            ready = false;
+        }
+    }
+
+    private boolean isReady() {
+        long now = System.currentTimeMillis();
+        if (now - readyCheckedAt > READY_CHECK_INTERVAL_MILLIS) {
+            readyCheckedAt = now;
+            try {
+                ready = redisClientWrapper.getBucket(READY_FLAG_NAME).isExists();
+            } catch (Exception e) {
+                log.error("[isReady] Error checking state of the product id filter", e);
+                ready = false;
+            }
+        }
+        return ready;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        Thread initializer = new Thread(this::initialize, "product-id-filter-init");
+        initializer.setDaemon(true);
+        initializer.start();
+    }
+
+    private void initialize() {
+        RBucket<String> readyFlag = redisClientWrapper.getBucket(READY_FLAG_NAME);
+        RLock lock = redisClientWrapper.getLock(INIT_LOCK_NAME);
+        try {
+            if (readyFlag.isExists() || !lock.tryLock()) {
+                // Ready, or being filled by another instance
+                return;
+            }
+            try {
+                RBloomFilter<String> filter = redisClientWrapper.getBloomFilter(FILTER_NAME);
+                if (!filter.tryInit(expectedInsertions, falseProbability)) {
+                    log.info("Product id filter already exists. Refilling it");
+                }
+                long start = System.currentTimeMillis();
+                long count = 0;
+                Query ids = new Query();
+                ids.fields().include("_id");
+                try (CloseableIterator<Product> products = mongoTemplate.stream(ids, Product.class)) {
+                    while (products.hasNext()) {
+                        filter.add(products.next().getId());
+                        count++;
+                    }
+                }
+                readyFlag.set(String.valueOf(System.currentTimeMillis()));
+                log.info("Filled product id filter with {} ids in {}ms", count, System.currentTimeMillis() - start);
+            } finally {
+                lock.unlock();
+            }
+        } catch (Exception e) {
+            log.error("[initialize] Error filling the product id filter. Lookups won't be filtered", e);
+        }
+    }
+}
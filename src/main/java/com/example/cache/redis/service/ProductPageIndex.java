@@ -0,0 +1,186 @@
+package com.example.cache.redis.service;
+
+import com.example.cache.redis.cache.CacheCleaner;
+import com.example.cache.redis.cache.RedisCache;
+import com.example.cache.redis.cache.RedisCacheManager;
+import com.example.cache.redis.cache.RedisClientWrapper;
+import com.example.cache.redis.model.Product;
+import com.example.cache.redis.model.ProductIdPage;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RAtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Cached pages of product ids, ordered by id.
+ *
+ * Pages are cached per page size, for the sizes in product.page.cachedSizes only, so that the set of cached pages is
+ * known when they have to be invalidated. A page of any other size is read from DB every time.
+ *
+ * Inserting or deleting a product shifts every page from the product's position onwards, so only those pages are
+ * evicted, along with the total number of products, which is cached on its own so that the other pages don't go
+ * stale. Since generated ids are increasing, a new product usually only invalidates the last page. Updates leave
+ * the ids, and so the pages, unchanged.
+ *
+ * A page read from DB just before an insert could otherwise be cached right after the insert evicted it. So every
+ * insert or deletion also bumps a generation counter in redis, and a page whose read overlapped with a bump is evicted
+ * again once cached.
+ */
+@Slf4j
+@Component
+public class ProductPageIndex {
+
+    public static final String PRODUCT_PAGE_CACHE = "Product_productIdPage";
+    public static final String PRODUCT_COUNT_CACHE = "Product_productCount";
+
+    private static final String TOTAL_KEY = "total";
+
+    @Value("${product.page.cachedSizes:10,20,50}")
+    private Set<Integer> cachedSizes;
+
+    @Value("${product.page.maxSize:100}")
+    private int maxSize;
+
+    // Above this many affected pages, the whole page cache is cleared instead of evicting them one by one
+    @Value("${product.page.maxEvictedPages:1000}")
+    private int maxEvictedPages;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private RedisCacheManager cacheManager;
+
+    @Autowired
+    private CacheCleaner cacheCleaner;
+
+    @Autowired
+    private RedisClientWrapper redisClientWrapper;
+
+    // Bumped on every insert or deletion
+    private RAtomicLong generation;
+
+    @PostConstruct
+    public void init() {
+        generation = redisClientWrapper.getAtomicLong(PRODUCT_PAGE_CACHE + ":generation");
+    }
+
+    /**
+     * Returns the ids of the products of the given page.
+     */
+    public ProductIdPage getPage(int page, int size) {
+        if (page < 0 || size < 1 || size > maxSize) {
+            throw new IllegalArgumentException("Page must be >= 0 and size between 1 and " + maxSize);
+        }
+        if (!cachedSizes.contains(size)) {
+            return readPage(page, size);
+        }
+        return readThrough(PRODUCT_PAGE_CACHE, pageKey(page, size), () -> readPage(page, size));
+    }
+
+    /**
+     * Returns the total number of products.
+     */
+    public long getTotalElements() {
+        return readThrough(PRODUCT_COUNT_CACHE, TOTAL_KEY, this::readTotal);
+    }
+
+    /**
+     * Returns the cached value of the key, reading it from DB and caching it on a miss.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T readThrough(String cacheName, String key, Supplier<T> reader) {
+        try {
+            RedisCache cache = cacheManager.getCache(cacheName);
+            Cache.ValueWrapper cached = cache.get(key);
+            if (cached != null && cached.get() != null) {
+                return (T) cached.get();
+            }
+            // Read before the DB, so that an insert or deletion that lands after the DB read is seen below
+            long readGeneration = generation.get();
+            T value = reader.get();
+            cache.put(key, value);
+            if (generation.get() != readGeneration) {
+                cache.evict(key);
+            }
+            return value;
+        } catch (Exception e) {
+            log.error("[readThrough] Error reading {} from {} cache", key, cacheName, e);
+            return reader.get();
+        }
+    }
+
+    private ProductIdPage readPage(int page, int size) {
+        log.info("Fetching product ids of page {} of size {} from db", page, size);
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "_id")).skip((long) page * size).limit(size);
+        query.fields().include("_id");
+        List<String> ids = mongoTemplate.find(query, Product.class).stream()
+                .map(Product::getId)
+                .collect(Collectors.toList());
+        return new ProductIdPage(ids);
+    }
+
+    private long readTotal() {
+        log.info("Counting products in db");
+        return mongoTemplate.count(new Query(), Product.class);
+    }
+
+    /**
+     * Evicts the cached pages shifted by the insertion or deletion of the product with the given id, and the cached
+     * total. Must be called after the DB write.
+     *
+     * The last affected page is found from the cached total, so usually the position of the product is the only thing
+     * counted in DB.
+     */
+    public void onProductInsertedOrDeleted(String id) {
+        try {
+            generation.incrementAndGet();
+            RedisCache countCache = cacheManager.getCache(PRODUCT_COUNT_CACHE);
+            Cache.ValueWrapper cachedTotal = countCache.get(TOTAL_KEY);
+            countCache.evict(TOTAL_KEY);
+
+            RedisCache pageCache = cacheManager.getCache(PRODUCT_PAGE_CACHE);
+            long position = mongoTemplate.count(new Query(Criteria.where("_id").lt(id)), Product.class);
+            // +1 covers a product inserted after the total was cached, or the page that held the last product before
+            // a deletion
+            long total = (cachedTotal != null && cachedTotal.get() != null
+                    ? ((Number) cachedTotal.get()).longValue() : readTotal()) + 1;
+
+            List<Object> keys = new ArrayList<>();
+            for (int size : cachedSizes) {
+                for (long page = position / size; page <= total / size; page++) {
+                    keys.add(pageKey(page, size));
+                }
+            }
+            if (keys.size() > maxEvictedPages) {
+                log.info("Product {} affects {} cached pages. Clearing {} cache", id, keys.size(), PRODUCT_PAGE_CACHE);
+                pageCache.clear();
+            } else {
+                pageCache.evict(keys);
+            }
+        } catch (Exception e) {
+            log.error("[onProductInsertedOrDeleted] Error evicting pages of product {} from {} cache", id,
+                    PRODUCT_PAGE_CACHE, e);
+            // The affected pages may not even be known. Clear all of them once redis is back
+            cacheCleaner.recordFailedEviction(PRODUCT_PAGE_CACHE, null, e);
+        }
+    }
+
+    private static String pageKey(long page, int size) {
+        return size + ":" + page;
+    }
+}
@@ -1,67 +1,265 @@
 package com.example.cache.redis.service;
 
 import com.example.cache.redis.cache.RedisCache;
-import com.example.cache.redis.cache.RedisCacheManager;
+import com.example.cache.redis.dto.ProductPage;
 import com.example.cache.redis.model.Product;
+import com.example.cache.redis.model.ProductIdPage;
 import com.example.cache.redis.repository.ProductRepository;
+import com.example.cache.routing.RoutingCacheManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class ProductService {
 
+    /**
+     * Cache names follow the 'database_entity' convention, which is what the per-entity LocalCachedMapConfig in the
+     * CacheConfig of the database, and the /cache/* routes, resolve against.
+     */
+    public static final String PRODUCT_CACHE = "Product_product";
+
     @Autowired
     private ProductRepository productRepository;
 
+    // Resolves the product cache to the tiers of it's config, like the cache annotations do
+    @Autowired
+    private RoutingCacheManager cacheManager;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
-    private RedisCacheManager cacheManager;
+    private ProductIdFilter productIdFilter;
+
+    @Autowired
+    private ProductPageIndex productPageIndex;
+
+    @Autowired
+    private ProductWriteBehind productWriteBehind;
+
+    @Value("${product.async.dbThreads:16}")
+    private int dbThreads;
+
+    @Value("${product.async.dbQueueSize:1000}")
+    private int dbQueueSize;
 
-    @Cacheable(cacheNames = "product")
+    // Bounded executor running the blocking DB reads of the async read path, off the request threads
+    private ThreadPoolExecutor dbExecutor;
+
+    @PostConstruct
+    public void init() {
+        // Used by the cache to refresh hot products ahead of expiry
+        cacheManager.registerLoader(PRODUCT_CACHE, id -> findProductInDb((String) id));
+
+        dbExecutor = new ThreadPoolExecutor(dbThreads, dbThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(dbQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "product-db-read");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        dbExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dbExecutor.shutdownNow();
+    }
+
+    /**
+     * Reads all products from DB. This isn't cached, as a single entry holding every product is expensive to write and
+     * can't be kept up to date cheaply. Use getProductPage instead.
+     */
     public List<Product> getAllProduct(){
         return productRepository.findAll();
     }
 
-    @Cacheable(cacheNames = "product",key = "#id")
+    /**
+     * Returns a page of the products, ordered by id. The ids of the page come from the cached ProductPageIndex, and
+     * the products are resolved through the product cache, like for findProductsByIds.
+     */
+    public ProductPage getProductPage(int page, int size) {
+        ProductIdPage idPage = productPageIndex.getPage(page, size);
+        return new ProductPage(page, size, productPageIndex.getTotalElements(), findProductsByIds(idPage.getIds()));
+    }
+
+    /**
+     * Concurrent requests for the same missing product are collapsed into a single DB read by
+     * {@link RedisCache#get(Object, java.util.concurrent.Callable)}, which Spring calls because of sync = true.
+     *
+     * The ProductIdFilter is only checked on a cache miss, right before reading the DB, so cache hits don't pay for it.
+     * Ids it rejects are answered without reading the DB. Like ids that pass it but don't exist, they are cached as
+     * negative entries, if negative caching is enabled for the cache.
+     */
+    @Cacheable(cacheNames = PRODUCT_CACHE, key = "#id", sync = true)
     public Optional<Product> findProductById(String id){
-        RedisCache redisCache = null;
-        Product product = null;
+        if (!productIdFilter.mightContain(id)) {
+            log.info("Product {} rejected by id filter", id);
+            return Optional.empty();
+        }
+        return Optional.ofNullable(findProductInDb(id));
+    }
+
+    /**
+     * Non-blocking variant of findProductById. The cache is read asynchronously, and on a miss the product is read from
+     * DB on the bounded dbExecutor, so no request thread waits on Redis or Mongo. Fails with a
+     * RejectedExecutionException when the dbExecutor's queue is full.
+     *
+     * Only a cache routed to redis alone can be read asynchronously. For other tiers, the whole lookup runs on the
+     * dbExecutor instead.
+     */
+    public CompletableFuture<Optional<Product>> findProductByIdAsync(String id) {
+        Cache cache = cacheManager.getCache(PRODUCT_CACHE);
+        if (!(cache instanceof RedisCache)) {
+            return CompletableFuture.supplyAsync(() -> Optional.ofNullable(cache.get(id, () -> loadProduct(id))),
+                    dbExecutor);
+        }
+        return ((RedisCache) cache).<Product>getAsync(id, key -> CompletableFuture.supplyAsync(() -> loadProduct(id),
+                dbExecutor)).thenApply(Optional::ofNullable);
+    }
+
+    private Product loadProduct(String id) {
+        if (!productIdFilter.mightContain(id)) {
+            log.info("Product {} rejected by id filter", id);
+            return null;
+        }
+        return findProductInDb(id);
+    }
+
+    /**
+     * Returns the products for the given ids, in the order of the ids. Ids that don't exist are left out.
+     *
+     * All ids are looked up in the cache in one go, and the ones missing from the cache are read from DB with a
+     * single query and cached in a single write. Caches routed to other tiers than redis alone are read and written
+     * one id at a time, but still read the missing ids from DB with a single query.
+     */
+    public List<Product> findProductsByIds(List<String> ids) {
+        Map<Object, Product> products;
         try {
-            redisCache = cacheManager.getCache("product");
-            Cache.ValueWrapper data = redisCache.get(id);
-            if (Objects.nonNull(data) && Objects.nonNull(data.get()))
-                return (Optional<Product>) data.get();
+            Cache cache = cacheManager.getCache(PRODUCT_CACHE);
+            products = cache instanceof RedisCache ? ((RedisCache) cache).getAll(ids, this::findProductsInDb)
+                    : getAllThroughCache(cache, ids);
         } catch (Exception e) {
-            log.error("[findProductById] Error fetching product from cache for {}", "product", e);
-            if (Objects.nonNull(redisCache))
-                redisCache.evict(id);
+            log.error("[findProductsByIds] Error fetching products from cache for {}", PRODUCT_CACHE, e);
+            products = findProductsInDb(ids);
+        }
+
+        List<Product> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                result.add(product);
+            }
+        }
+        return result;
+    }
+
+    private Map<Object, Product> getAllThroughCache(Cache cache, List<String> ids) {
+        Map<Object, Product> products = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String id : ids) {
+            Product product = cache.get(id, Product.class);
+            if (product != null) {
+                products.put(id, product);
+            } else {
+                missingIds.add(id);
+            }
         }
-        product = productRepository.findById(id).orElse(null);
-        if(Objects.nonNull(redisCache) && Objects.nonNull(product)){
-            log.info("Fetched from db and adding in cache for future reference");
-            redisCache.put(product.getId(),product);
+        if (!missingIds.isEmpty()) {
+            findProductsInDb(missingIds).forEach((id, product) -> {
+                cache.put(id, product);
+                products.put(id, product);
+            });
         }
-        return Optional.ofNullable(product);
+        return products;
     }
 
-    @CachePut(cacheNames = "product",key = "#product.id")
+    /**
+     * Reads the product from DB, including writes still queued for write-behind. Returns null if it doesn't exist.
+     */
+    private Product findProductInDb(String id) {
+        log.info("Fetching product {} from db", id);
+        Product product = productRepository.findById(id).orElse(null);
+        if (!productWriteBehind.isEnabled()) {
+            return product;
+        }
+        Map<Object, Product> products = new HashMap<>();
+        if (product != null) {
+            products.put(id, product);
+        }
+        return productWriteBehind.applyPending(Collections.singletonList(id), products).get(id);
+    }
+
+    private Map<Object, Product> findProductsInDb(Iterable<?> ids) {
+        List<String> productIds = new ArrayList<>();
+        ids.forEach(id -> productIds.add((String) id));
+        log.info("Fetching {} products from db", productIds.size());
+        Map<Object, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(productIds)) {
+            products.put(product.getId(), product);
+        }
+        return productWriteBehind.applyPending(productIds, products);
+    }
+
+    /**
+     * Saves the product and caches it. In write-behind mode the DB write is only queued, and flushed to DB later by
+     * ProductWriteBehind, unless its queue is full.
+     */
+    @CachePut(cacheNames = PRODUCT_CACHE,key = "#product.id")
     public Product saveProduct(Product product){
-        productRepository.save(product);
+        // Orders this write against other cached copies of the product. See RedisCache.putIfNewer
+        product.setVersion(System.currentTimeMillis());
+        if (productWriteBehind.isEnabled() && productWriteBehind.enqueueSave(product)) {
+            productIdFilter.add(product.getId());
+            return product;
+        }
+        boolean inserted;
+        if (product.getId() == null) {
+            productRepository.save(product);
+            inserted = true;
+        } else {
+            // The replaced document is returned, so a null result means the product is new
+            inserted = mongoTemplate.findAndReplace(new Query(Criteria.where("_id").is(product.getId())), product,
+                    FindAndReplaceOptions.options().upsert()) == null;
+        }
+        productIdFilter.add(product.getId());
+        if (inserted) {
+            productPageIndex.onProductInsertedOrDeleted(product.getId());
+        }
         return product;
     }
 
-    @CacheEvict(cacheNames = "product",key = "#id")
+    @CacheEvict(cacheNames = PRODUCT_CACHE,key = "#id")
     public String deleteProduct(String id){
+        if (productWriteBehind.isEnabled() && productWriteBehind.enqueueDelete(id)) {
+            return id;
+        }
         productRepository.deleteById(id);
+        productPageIndex.onProductInsertedOrDeleted(id);
         return id;
     }
 
@@ -0,0 +1,201 @@
+package com.example.cache.redis.service;
+
+import com.example.cache.redis.cache.RedisClientWrapper;
+import com.example.cache.redis.model.Product;
+import com.example.cache.redis.util.JsonUtil;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.redisson.api.RBatch;
+import org.redisson.api.RLock;
+import org.redisson.api.RMap;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-behind of product writes to DB.
+ *
+ * Writes are queued in a redis hash of product id -> product json (an empty string for a delete), which survives
+ * restarts of the java instances. Repeated writes of the same product replace each other in the hash, so only the last
+ * one reaches DB. A scheduled flusher sends the pending writes to DB in unordered bulk writes of up to batchSize, and
+ * then removes each flushed entry from the hash, unless it was overwritten in the meantime.
+ *
+ * Backpressure: once maxPending writes are queued, enqueue refuses new writes, and the caller writes to DB directly.
+ */
+@Slf4j
+@Component
+public class ProductWriteBehind {
+
+    private static final String PENDING_WRITES_NAME = "product:writebehind:pending";
+    private static final String FLUSH_LOCK_NAME = PENDING_WRITES_NAME + ":flush";
+    private static final String DELETED = "";
+
+    @Value("${product.writeBehind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${product.writeBehind.batchSize:500}")
+    private int batchSize;
+
+    @Value("${product.writeBehind.maxPending:100000}")
+    private int maxPending;
+
+    @Autowired
+    private RedisClientWrapper redisClientWrapper;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ProductPageIndex productPageIndex;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void init() {
+        if (enabled && meterRegistry != null) {
+            Gauge.builder("product.writebehind.pending", this, ProductWriteBehind::getPendingCount)
+                    .register(meterRegistry);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues the save of the product. Assigns an id to new products, since the DB won't until the write is flushed.
+     * Returns false if the queue is full, in which case the product must be saved directly.
+     */
+    public boolean enqueueSave(Product product) {
+        if (product.getId() == null) {
+            product.setId(new ObjectId().toHexString());
+        }
+        return enqueue(product.getId(), JsonUtil.toJsonString(product));
+    }
+
+    /**
+     * Queues the delete of the product. Returns false if the queue is full, in which case it must be deleted directly.
+     */
+    public boolean enqueueDelete(String id) {
+        return enqueue(id, DELETED);
+    }
+
+    private boolean enqueue(String id, String write) {
+        RMap<String, String> pendingWrites = redisClientWrapper.getMap(PENDING_WRITES_NAME);
+        if (pendingWrites.size() >= maxPending && !pendingWrites.containsKey(id)) {
+            log.warn("Write-behind queue is full ({} writes). Writing product {} directly to db", maxPending, id);
+            return false;
+        }
+        pendingWrites.fastPut(id, write);
+        return true;
+    }
+
+    /**
+     * Overlays the queued writes of the given products over the products read from DB, so that reads never see an
+     * older version than the last write.
+     */
+    public Map<Object, Product> applyPending(Collection<String> ids, Map<Object, Product> products) {
+        if (!enabled || ids.isEmpty()) {
+            return products;
+        }
+        Map<String, String> pending = redisClientWrapper.getMap(PENDING_WRITES_NAME).getAll(new HashSet<>(ids));
+        for (Map.Entry<String, String> write : pending.entrySet()) {
+            if (DELETED.equals(write.getValue())) {
+                products.remove(write.getKey());
+            } else {
+                products.put(write.getKey(), JsonUtil.fromJsonString(write.getValue(), Product.class));
+            }
+        }
+        return products;
+    }
+
+    public int getPendingCount() {
+        return redisClientWrapper.getMap(PENDING_WRITES_NAME).size();
+    }
+
+    /**
+     * Flushes all pending writes to DB, batchSize at a time. Only one java instance flushes at a time.
+     */
+    @Scheduled(fixedDelayString = "${product.writeBehind.flushIntervalMillis:1000}")
+    public void flush() {
+        if (!enabled) {
+            return;
+        }
+        RLock lock = redisClientWrapper.getLock(FLUSH_LOCK_NAME);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            RMap<String, String> pendingWrites = redisClientWrapper.getMap(PENDING_WRITES_NAME);
+            Iterator<String> ids = pendingWrites.keySet(batchSize).iterator();
+            while (ids.hasNext()) {
+                List<String> batch = new ArrayList<>(batchSize);
+                while (ids.hasNext() && batch.size() < batchSize) {
+                    batch.add(ids.next());
+                }
+                flushBatch(pendingWrites.getAll(new HashSet<>(batch)));
+            }
+        } catch (Exception e) {
+            log.error("[flush] Error flushing write-behind queue to db. Will retry on next flush", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushBatch(Map<String, String> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        // Ids of the operations, in the order they were added. Used to map upserts back to product ids
+        List<String> operationIds = new ArrayList<>(writes.size());
+        List<String> deletedIds = new ArrayList<>();
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            Query byId = new Query(Criteria.where("_id").is(write.getKey()));
+            operationIds.add(write.getKey());
+            if (DELETED.equals(write.getValue())) {
+                operations.remove(byId);
+                deletedIds.add(write.getKey());
+            } else {
+                operations.replaceOne(byId, JsonUtil.fromJsonString(write.getValue(), Product.class),
+                        FindAndReplaceOptions.options().upsert());
+            }
+        }
+        BulkWriteResult result = operations.execute();
+
+        // Remove what was flushed, unless it has been overwritten since it was read
+        RBatch batch = redisClientWrapper.createBatch();
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            batch.getMap(PENDING_WRITES_NAME, StringCodec.INSTANCE).removeAsync(write.getKey(), write.getValue());
+        }
+        batch.execute();
+        log.info("Flushed {} product writes to db in {}ms", writes.size(), System.currentTimeMillis() - start);
+
+        // New products and deletes shift the cached pages of the product list
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            productPageIndex.onProductInsertedOrDeleted(operationIds.get(upsert.getIndex()));
+        }
+        deletedIds.forEach(productPageIndex::onProductInsertedOrDeleted);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.cache.routing;
+
+import com.example.cache.aerospike.services.IAerospikeCacheService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.lang.NonNull;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.Callable;
+
+/**
+ * The 'aerospike' tier: a Spring Cache over IAerospikeCacheService. Each cache is an Aerospike set of the same name,
+ * holding every value as JSON in a single bin, with the default TTL of cache.aerospike.ttl.
+ *
+ * Failed writes, evictions and clears throw, so that they reach the CacheErrorHandler (and the outbox of CacheCleaner)
+ * instead of silently leaving a stale entry behind.
+ */
+@Slf4j
+public class AerospikeCache implements Cache {
+
+    private static final String BIN = "value";
+
+    private final String name;
+    private final IAerospikeCacheService aerospike;
+    private final TypeReference<Object> typeReference;
+
+    public AerospikeCache(String name, IAerospikeCacheService aerospike, Class<?> classType) {
+        this.name = name;
+        this.aerospike = aerospike;
+        this.typeReference = new TypeReference<Object>() {
+            @Override
+            public Type getType() {
+                return classType;
+            }
+        };
+    }
+
+    @Override
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NonNull
+    public Object getNativeCache() {
+        return aerospike;
+    }
+
+    @Override
+    public ValueWrapper get(@NonNull Object key) {
+        Object value = aerospike.get(name, name, String.valueOf(key), BIN, typeReference);
+        return value != null ? new SimpleValueWrapper(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, Class<T> type) {
+        ValueWrapper cached = get(key);
+        Object value = cached != null ? cached.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        try {
+            put(key, value);
+        } catch (IllegalStateException e) {
+            // The loaded value is still good to return, it just won't be cached
+            log.error("Failed to cache loaded key {} in aerospike cache {}", key, name, e);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(@NonNull Object key, Object value) {
+        if (value == null) {
+            evict(key);
+            return;
+        }
+        if (!aerospike.tryPut(name, name, String.valueOf(key), BIN, value)) {
+            throw new IllegalStateException("Failed to put key " + key + " in aerospike cache " + name);
+        }
+    }
+
+    @Override
+    public void evict(@NonNull Object key) {
+        if (!aerospike.delete(name, name, String.valueOf(key))) {
+            throw new IllegalStateException("Failed to evict key " + key + " from aerospike cache " + name);
+        }
+    }
+
+    /**
+     * Truncates the set. Fails if the truncation isn't accepted, so that callers don't take the cache for cleared.
+     */
+    @Override
+    public void clear() {
+        log.info("Truncating aerospike cache {}", name);
+        if (!aerospike.truncate(name, name)) {
+            throw new IllegalStateException("Failed to truncate aerospike cache " + name);
+        }
+    }
+}
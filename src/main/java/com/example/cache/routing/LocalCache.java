@@ -0,0 +1,93 @@
+package com.example.cache.routing;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.lang.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The 'local' tier: an in-process Caffeine cache, private to this java instance. Values are held as is, without
+ * serialization, and are not synced with other instances, so a write on another instance is only seen here once the
+ * entry expired. Entries thus always have a (short) time to live.
+ */
+public class LocalCache implements Cache {
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> cache;
+
+    public LocalCache(String name, long maximumSize, long timeToLiveMillis) {
+        if (timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("Local cache " + name + " needs a time to live");
+        }
+        this.name = name;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NonNull
+    public Object getNativeCache() {
+        return cache;
+    }
+
+    @Override
+    public ValueWrapper get(@NonNull Object key) {
+        Object value = cache.getIfPresent(key);
+        return value != null ? new SimpleValueWrapper(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, Class<T> type) {
+        Object value = cache.getIfPresent(key);
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * Concurrent misses for the same key wait for a single call of the valueLoader. Null values are not cached.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+        return (T) cache.get(key, k -> {
+            try {
+                return valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+        });
+    }
+
+    @Override
+    public void put(@NonNull Object key, Object value) {
+        if (value == null) {
+            cache.invalidate(key);
+        } else {
+            cache.put(key, value);
+        }
+    }
+
+    @Override
+    public void evict(@NonNull Object key) {
+        cache.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.cache.routing;
+
+import com.example.cache.aerospike.services.IAerospikeCacheService;
+import com.example.cache.redis.cache.RedisCache;
+import com.example.cache.redis.cache.RedisCacheManager;
+import com.example.cache.redis.config.CacheConfiguration;
+import com.example.cache.redis.config.CacheEntityRegistry;
+import com.example.cache.redis.model.LocalCachedMapConfig;
+import com.example.cache.redis.model.Versioned;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Primary;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * The CacheManager behind @Cacheable/@CachePut/@CacheEvict. Routes each cache to the backends listed in the tiers of
+ * it's LocalCachedMapConfig (in the CacheConfig of it's database), fastest first:
+ *
+ *      local     = in-process Caffeine cache of this java instance only
+ *      redis     = RedisCache (a local cache synced across instances + central redis). The default
+ *      aerospike = a set of the same name in Aerospike
+ *
+ * Eg: tiers = ["local", "aerospike"]. Several tiers are stacked in a TieredCache. Moving an entity to another backend
+ * is then only a matter of updating it's CacheConfig and refreshing the cache (/cache/refresh*).
+ *
+ * The routing of a cache is decided on first use and kept until the cache is rebuilt. Code that clears or evicts
+ * caches outside of the Spring annotations (Eg: the /cache/clear* routes, CacheCleaner, CacheChangeStreamListener)
+ * goes through this class too, so that every tier of the cache is reached.
+ */
+@Primary
+@Component
+@Slf4j
+public class RoutingCacheManager implements CacheManager {
+
+    public static final String TIER_LOCAL = "local";
+    public static final String TIER_REDIS = "redis";
+    public static final String TIER_AEROSPIKE = "aerospike";
+
+    @Autowired
+    private RedisCacheManager redisCacheManager;
+
+    @Autowired
+    private CacheConfiguration cacheConfiguration;
+
+    @Autowired
+    private CacheEntityRegistry entityRegistry;
+
+    @Autowired(required = false)
+    private IAerospikeCacheService aerospikeCacheService;
+
+    @Value("${cache.redis.local.defaultCacheSize:10000}")
+    private int defaultCacheSize;
+
+    // TTL of local tiers whose config sets none. Local tiers are not synced across instances, so they must expire
+    @Value("${cache.routing.local.defaultTimeToLiveMillis:30000}")
+    private long defaultLocalTimeToLiveMillis;
+
+    // Caches routed to anything other than redis alone. Redis-only caches are always resolved by RedisCacheManager
+    private final ConcurrentHashMap<String, Cache> routedCaches = new ConcurrentHashMap<>();
+
+    // Caches routed to redis alone. Only their names are kept, as RedisCacheManager may replace the RedisCache itself
+    private final Set<String> redisOnlyCaches = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public Cache getCache(@NonNull String name) {
+        Cache cache = routedCaches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        if (redisOnlyCaches.contains(name)) {
+            return redisCacheManager.getCache(name);
+        }
+        List<String> tiers = getTiers(name);
+        if (tiers.size() == 1 && TIER_REDIS.equals(tiers.get(0))) {
+            redisOnlyCaches.add(name);
+            return redisCacheManager.getCache(name);
+        }
+        return routedCaches.computeIfAbsent(name, n -> createCache(n, tiers));
+    }
+
+    /**
+     * Evicts the keys from every tier of the cache, slowest first. Redis tiers evict all of the keys in a single call.
+     */
+    public void evict(@NonNull String name, @NonNull Collection<?> keys) {
+        for (Cache tier : tiersSlowestFirst(getCache(name))) {
+            if (tier instanceof RedisCache) {
+                ((RedisCache) tier).evict(keys);
+            } else {
+                keys.forEach(tier::evict);
+            }
+        }
+    }
+
+    /**
+     * Caches the values in the redis tier of the cache through RedisCache.putAllIfNewer, and evicts them from the other
+     * tiers, which don't compare versions. Tiers are updated slowest first.
+     */
+    public void putAllIfNewer(@NonNull String name, @NonNull Map<Object, ? extends Versioned> values) {
+        for (Cache tier : tiersSlowestFirst(getCache(name))) {
+            if (tier instanceof RedisCache) {
+                ((RedisCache) tier).putAllIfNewer(values);
+            } else {
+                values.keySet().forEach(tier::evict);
+            }
+        }
+    }
+
+    /**
+     * Clears every tier of the cache.
+     */
+    public void clear(@NonNull String name) {
+        getCache(name).clear();
+    }
+
+    /**
+     * Registers the loader of single entities of the cache, used by it's redis tier, if it has one, to refresh entries
+     * ahead of expiry. See RedisCacheManager.registerLoader.
+     */
+    public void registerLoader(@NonNull String name, @NonNull Function<Object, Object> loader) {
+        redisCacheManager.registerLoader(name, loader);
+    }
+
+    private static List<Cache> tiersSlowestFirst(Cache cache) {
+        if (!(cache instanceof TieredCache)) {
+            return Collections.singletonList(cache);
+        }
+        List<Cache> tiers = new ArrayList<>(((TieredCache) cache).getNativeCache());
+        Collections.reverse(tiers);
+        return tiers;
+    }
+
+    private List<String> getTiers(String name) {
+        LocalCachedMapConfig config = cacheConfiguration.getLocalCachedMapConfig(name);
+        List<String> tiers = new ArrayList<>();
+        if (config != null && config.getTiers() != null) {
+            for (String tier : config.getTiers()) {
+                String normalized = tier.toLowerCase(Locale.ROOT);
+                if (TIER_LOCAL.equals(normalized) || TIER_REDIS.equals(normalized)
+                        || (TIER_AEROSPIKE.equals(normalized) && aerospikeCacheService != null)) {
+                    tiers.add(normalized);
+                } else {
+                    log.error("Unknown or unavailable cache tier {} for cache {}. Ignoring it", tier, name);
+                }
+            }
+        }
+        if (tiers.isEmpty()) {
+            tiers.add(TIER_REDIS);
+        }
+        return tiers;
+    }
+
+    private Cache createCache(String name, List<String> tiers) {
+        log.info("Routing cache {} to tiers {}", name, tiers);
+        List<Cache> caches = new ArrayList<>(tiers.size());
+        for (String tier : tiers) {
+            caches.add(createTier(name, tier));
+        }
+        return caches.size() == 1 ? caches.get(0) : new TieredCache(name, caches);
+    }
+
+    private Cache createTier(String name, String tier) {
+        switch (tier) {
+            case TIER_LOCAL:
+                LocalCachedMapConfig config = cacheConfiguration.getLocalCachedMapConfig(name);
+                long maximumSize = config != null && config.getCacheSize() != null && config.getCacheSize() > 0
+                        ? config.getCacheSize() : defaultCacheSize;
+                long timeToLiveMillis = config != null && config.getTimeToLiveMillis() != null
+                        ? config.getTimeToLiveMillis() : 0;
+                if (timeToLiveMillis <= 0) {
+                    log.error("No timeToLiveMillis for the local tier of cache {}. It isn't synced with other "
+                            + "instances, so it expires after {}ms", name, defaultLocalTimeToLiveMillis);
+                    timeToLiveMillis = defaultLocalTimeToLiveMillis;
+                }
+                return new LocalCache(name, maximumSize, timeToLiveMillis);
+            case TIER_AEROSPIKE:
+                Class<?> classType = entityRegistry.getClassType(name);
+                return new AerospikeCache(name, aerospikeCacheService, classType != null ? classType : Object.class);
+            default:
+                return redisCacheManager.getCache(name);
+        }
+    }
+
+    @Override
+    @NonNull
+    public Collection<String> getCacheNames() {
+        List<String> names = new ArrayList<>(routedCaches.keySet());
+        names.addAll(redisCacheManager.getCacheNames());
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Drops the routing of the cache, so that it is routed again with the current configs on next use, and rebuilds
+     * it's local redis cache if it has one.
+     */
+    public void rebuildCache(@NonNull String name) {
+        redisOnlyCaches.remove(name);
+        Cache routed = routedCaches.remove(name);
+        if (routed != null) {
+            log.info("Dropping routing of cache {}", name);
+            if (routed instanceof LocalCache || routed instanceof TieredCache) {
+                // Local tiers would otherwise hold on to data that the refresh is meant to drop
+                dropLocalTiers(routed);
+            }
+        }
+        redisCacheManager.rebuildLocalCache(name);
+    }
+
+    private static void dropLocalTiers(Cache cache) {
+        if (cache instanceof LocalCache) {
+            cache.clear();
+        } else if (cache instanceof TieredCache) {
+            ((TieredCache) cache).getNativeCache().forEach(RoutingCacheManager::dropLocalTiers);
+        }
+    }
+}
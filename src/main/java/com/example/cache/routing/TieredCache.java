@@ -0,0 +1,114 @@
+package com.example.cache.routing;
+
+import com.example.cache.redis.cache.RedisCache;
+import com.example.cache.redis.model.Versioned;
+import org.springframework.cache.Cache;
+import org.springframework.lang.NonNull;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A stack of caches, fastest first (Eg: local -> redis -> aerospike).
+ *
+ * Reads go down the stack until a tier has the value, and copy it into the faster tiers on the way back. Writes and
+ * evictions go to every tier, slowest first, so that a faster tier is never refilled from a slower one that hasn't
+ * been updated yet.
+ *
+ * Versioned values are only compared against the cached version by the redis tier (see RedisCache.putIfNewer), which
+ * may drop them as stale. So the tiers in front of a redis tier are evicted instead of written, and refill from what
+ * redis actually holds on their next read.
+ */
+public class TieredCache implements Cache {
+
+    private final String name;
+    private final List<Cache> tiers;
+
+    public TieredCache(String name, List<Cache> tiers) {
+        this.name = name;
+        this.tiers = tiers;
+    }
+
+    @Override
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NonNull
+    public List<Cache> getNativeCache() {
+        return tiers;
+    }
+
+    @Override
+    public ValueWrapper get(@NonNull Object key) {
+        for (int i = 0; i < tiers.size(); i++) {
+            ValueWrapper cached = tiers.get(i).get(key);
+            if (cached != null) {
+                if (cached.get() != null) {
+                    for (int j = i - 1; j >= 0; j--) {
+                        tiers.get(j).put(key, cached.get());
+                    }
+                }
+                return cached;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(@NonNull Object key, Class<T> type) {
+        ValueWrapper cached = get(key);
+        Object value = cached != null ? cached.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    /**
+     * Each tier loads a missing key from the tier below it, and the last one from the valueLoader. This way each tier
+     * keeps it's own guarantees for concurrent misses (Eg: the single-flight loading of RedisCache).
+     */
+    @Override
+    public <T> T get(@NonNull Object key, @NonNull Callable<T> valueLoader) {
+        return getFromTier(0, key, valueLoader);
+    }
+
+    private <T> T getFromTier(int tier, Object key, Callable<T> valueLoader) {
+        if (tier == tiers.size() - 1) {
+            return tiers.get(tier).get(key, valueLoader);
+        }
+        return tiers.get(tier).get(key, () -> getFromTier(tier + 1, key, valueLoader));
+    }
+
+    @Override
+    public void put(@NonNull Object key, Object value) {
+        boolean versionedByRedis = false;
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            Cache tier = tiers.get(i);
+            if (versionedByRedis) {
+                tier.evict(key);
+            } else {
+                tier.put(key, value);
+                versionedByRedis = value instanceof Versioned && tier instanceof RedisCache;
+            }
+        }
+    }
+
+    @Override
+    public void evict(@NonNull Object key) {
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            tiers.get(i).evict(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            tiers.get(i).clear();
+        }
+    }
+}
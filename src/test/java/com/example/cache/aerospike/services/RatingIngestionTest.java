@@ -0,0 +1,89 @@
+package com.example.cache.aerospike.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RatingIngestionTest {
+
+    @Test
+    void drainTakesWhatWasAddedSinceLastDrain() {
+        RatingIngestion.Accumulator accumulator = new RatingIngestion.Accumulator(4);
+        assertTrue(accumulator.add(1, 5));
+        assertTrue(accumulator.add(2, 7));
+
+        assertArrayEquals(new long[] {3, 12}, accumulator.drain());
+        assertArrayEquals(new long[] {0, 0}, accumulator.drain());
+
+        assertTrue(accumulator.add(1, 4));
+        assertArrayEquals(new long[] {1, 4}, accumulator.drain());
+    }
+
+    @Test
+    void retiredAccumulatorRefusesAdds() {
+        RatingIngestion.Accumulator accumulator = new RatingIngestion.Accumulator(4);
+        assertTrue(accumulator.add(1, 3));
+
+        assertArrayEquals(new long[] {1, 3}, accumulator.retire());
+        assertFalse(accumulator.add(1, 3));
+        assertArrayEquals(new long[] {0, 0}, accumulator.drain());
+    }
+
+    @Test
+    void concurrentAddsAreDrainedExactlyOnce() throws Exception {
+        RatingIngestion.Accumulator accumulator = new RatingIngestion.Accumulator(4);
+        int writers = 8;
+        CountDownLatch started = new CountDownLatch(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            // Each writer adds until the accumulator is retired, and returns the count and sum that were accepted
+            List<Future<long[]>> accepted = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                accepted.add(executor.submit(() -> {
+                    long[] total = new long[2];
+                    started.countDown();
+                    while (accumulator.add(1, 3)) {
+                        total[0]++;
+                        total[1] += 3;
+                    }
+                    return total;
+                }));
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            long[] drained = new long[2];
+            for (int i = 0; i < 100; i++) {
+                long[] total = accumulator.drain();
+                drained[0] += total[0];
+                drained[1] += total[1];
+                Thread.yield();
+            }
+            long[] retired = accumulator.retire();
+            drained[0] += retired[0];
+            drained[1] += retired[1];
+
+            long[] expected = new long[2];
+            for (Future<long[]> future : accepted) {
+                long[] total = future.get(5, TimeUnit.SECONDS);
+                expected[0] += total[0];
+                expected[1] += total[1];
+            }
+            assertTrue(expected[0] > 0);
+            // Nothing accepted is lost or drained twice, whichever drain it landed in
+            assertArrayEquals(expected, drained);
+            assertArrayEquals(new long[] {0, 0}, accumulator.drain());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.redis.codec.CacheValueCodecs;
+import io.netty.buffer.ByteBuf;
+import org.junit.jupiter.api.Test;
+import org.redisson.codec.MarshallingCodec;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CacheEntryCodecTest {
+
+    private final MarshallingCodec clientCodec = new MarshallingCodec();
+    private final CacheEntryCodec codec = new CacheEntryCodec(clientCodec);
+
+    @Test
+    void framesAreStoredAsIs() throws Exception {
+        byte[] frame = CacheValueCodecs.encode(CacheValueCodecs.JSON, "Dune");
+        ByteBuf encoded = codec.getMapValueEncoder().encode(frame);
+        assertEquals(frame.length, encoded.readableBytes());
+
+        assertArrayEquals(frame, (byte[]) codec.getMapValueDecoder().decode(encoded, null));
+    }
+
+    @Test
+    void negativeEntriesRoundTrip() throws Exception {
+        byte[] negative = CacheValueCodecs.encodeNegative(System.currentTimeMillis());
+        ByteBuf encoded = codec.getMapValueEncoder().encode(negative);
+
+        assertArrayEquals(negative, (byte[]) codec.getMapValueDecoder().decode(encoded, null));
+    }
+
+    @Test
+    void legacyMarshalledValuesAreStillRead() throws Exception {
+        byte[] frame = CacheValueCodecs.encode(CacheValueCodecs.JSON, "Dune");
+        ByteBuf legacyFrame = clientCodec.getMapValueEncoder().encode(frame);
+        assertArrayEquals(frame, (byte[]) codec.getMapValueDecoder().decode(legacyFrame, null));
+
+        ByteBuf legacyJson = clientCodec.getMapValueEncoder().encode("{\"id\":\"p1\"}");
+        assertEquals("{\"id\":\"p1\"}", codec.getMapValueDecoder().decode(legacyJson, null));
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.cache.redis.cache;
+
+import com.example.cache.redis.codec.CacheValueCodecs;
+import com.example.cache.redis.model.Product;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RLocalCachedMap;
+import org.redisson.api.RMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RedisCacheTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void concurrentMissesShareSingleLoad() throws Exception {
+        RLocalCachedMap<Object, Object> map = mock(RLocalCachedMap.class);
+        RedisCache cache = new RedisCache("product", map, Product.class);
+
+        int callers = 8;
+        AtomicInteger loads = new AtomicInteger();
+        // Counted down by every caller once it has entered get and missed the cache
+        CountDownLatch entered = new CountDownLatch(callers);
+        when(map.get("p1")).thenAnswer(invocation -> {
+            entered.countDown();
+            return null;
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Product>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> cache.get("p1", () -> {
+                    loads.incrementAndGet();
+                    // Keep the load in flight until every caller has queued up behind it. Having missed the cache,
+                    // a caller still has to find the in-flight load, which it counts as a deduplicated load
+                    assertTrue(entered.await(5, TimeUnit.SECONDS));
+                    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                    while (cache.getDeduplicatedLoadCount() < callers - 1 && System.nanoTime() < deadline) {
+                        Thread.yield();
+                    }
+                    return new Product("p1", "books", "Dune");
+                })));
+            }
+
+            for (Future<Product> result : results) {
+                assertEquals("Dune", result.get(5, TimeUnit.SECONDS).getProductName());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(callers - 1, cache.getDeduplicatedLoadCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void missingKeyIsCachedAsNegativeEntry() {
+        RLocalCachedMap<Object, Object> map = mock(RLocalCachedMap.class);
+        RedisCache cache = new RedisCache("product", map, null, Product.class, null,
+                new RedisCacheMetrics("product", null), new HotKeyRecorder(0), null, 60000);
+
+        assertNull(cache.get("missing", () -> null));
+        verify(map).fastPut(eq("missing"), argThat(CacheValueCodecs::isNegative));
+
+        byte[] negativeEntry = CacheValueCodecs.encodeNegative(System.currentTimeMillis() + 60000);
+        when(map.get("missing")).thenReturn(negativeEntry);
+        AtomicInteger loads = new AtomicInteger();
+        assertNull(cache.get("missing", () -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertEquals(0, loads.get());
+        assertEquals(1, cache.getMetrics().getNegativeHits());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void olderVersionNeverReplacesNewerOne() {
+        RLocalCachedMap<Object, Object> map = mock(RLocalCachedMap.class);
+        RMap<Object, Object> centralMap = mock(RMap.class);
+        RedisCache cache = new RedisCache("product", map, centralMap, Product.class, null,
+                new RedisCacheMetrics("product", null), new HotKeyRecorder(0), null, 0);
+        byte[] cached = CacheValueCodecs.encode(CacheValueCodecs.DEFAULT, new Product("p1", "books", "Dune", 200L));
+        when(centralMap.get("p1")).thenReturn(cached);
+        when(map.replace(eq("p1"), eq(cached), any())).thenReturn(true);
+
+        assertFalse(cache.putIfNewer("p1", new Product("p1", "books", "Dune Messiah", 100L)));
+        verify(map, never()).replace(any(), any(), any());
+        assertEquals(1, cache.getMetrics().getStalePuts());
+
+        assertTrue(cache.putIfNewer("p1", new Product("p1", "books", "Children of Dune", 300L)));
+        verify(map).replace(eq("p1"), eq(cached), any());
+    }
+}
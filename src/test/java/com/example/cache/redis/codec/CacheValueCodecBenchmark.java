@@ -0,0 +1,48 @@
+package com.example.cache.redis.codec;
+
+import com.example.cache.redis.model.Product;
+import com.example.cache.redis.util.JsonUtil;
+
+import java.util.Arrays;
+
+/**
+ * Rough single-threaded comparison of the cache value codecs against the old JsonUtil string round trip.
+ * Not part of the test suite; run the main method directly.
+ */
+public class CacheValueCodecBenchmark {
+
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        Product product = new Product("5f1d7a0c2a4e3b0012345678", "electronics", "Noise cancelling headphones");
+
+        // A java String holds 2 bytes per char in memory
+        String json = JsonUtil.toJsonString(product);
+        report("JsonUtil string", json.length() * 2,
+                () -> JsonUtil.toJsonString(product),
+                () -> JsonUtil.fromJsonString(json, Product.class));
+
+        for (CacheValueCodec codec : Arrays.asList(CacheValueCodecs.JSON, CacheValueCodecs.SMILE, CacheValueCodecs.AVRO)) {
+            byte[] encoded = CacheValueCodecs.encode(codec, product);
+            report(codec.getName(), encoded.length,
+                    () -> CacheValueCodecs.encode(codec, product),
+                    () -> CacheValueCodecs.decode(encoded, Product.class));
+        }
+    }
+
+    private static void report(String name, int bytes, Runnable put, Runnable get) {
+        System.out.printf("%-16s %4d bytes  put %6d ns  get %6d ns%n", name, bytes, nanosPerOp(put), nanosPerOp(get));
+    }
+
+    private static long nanosPerOp(Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.cache.redis.codec;
+
+import com.example.cache.compression.CompressionStats;
+import com.example.cache.redis.model.Product;
+import com.example.cache.redis.util.JsonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheValueCodecsTest {
+
+    private final Product product = new Product("p1", "books", "Dune");
+
+    @Test
+    void everyCodecRoundTrips() {
+        for (CacheValueCodec codec : Arrays.asList(CacheValueCodecs.JSON, CacheValueCodecs.SMILE, CacheValueCodecs.AVRO)) {
+            byte[] encoded = CacheValueCodecs.encode(codec, product);
+            assertEquals(codec.getId(), encoded[0]);
+            assertEquals(product, CacheValueCodecs.decode(encoded, Product.class), codec.getName());
+        }
+    }
+
+    @Test
+    void binaryCodecsAreSmallerThanJsonString() {
+        int jsonString = JsonUtil.toJsonString(product).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(CacheValueCodecs.encode(CacheValueCodecs.SMILE, product).length < jsonString);
+        assertTrue(CacheValueCodecs.encode(CacheValueCodecs.AVRO, product).length < jsonString);
+    }
+
+    @Test
+    void unknownNamesFallBackToDefault() {
+        assertSame(CacheValueCodecs.DEFAULT, CacheValueCodecs.forName(null));
+        assertSame(CacheValueCodecs.DEFAULT, CacheValueCodecs.forName("protobuf"));
+        assertSame(CacheValueCodecs.SMILE, CacheValueCodecs.forName("smile"));
+    }
+
+    @Test
+    void unknownHeaderDecodesToNull() {
+        assertNull(CacheValueCodecs.decode(new byte[] {42, 1, 2}, Product.class));
+    }
+
+    @Test
+    void valuesOverThresholdAreCompressed() {
+        Product large = new Product("p2", "books", String.join(" ", Collections.nCopies(200, "Dune")));
+        CompressionStats stats = new CompressionStats();
+
+        byte[] small = CacheValueCodecs.encode(CacheValueCodecs.JSON, product, 256, stats);
+        assertEquals(CacheValueCodecs.JSON.getId(), small[0]);
+        assertEquals(product, CacheValueCodecs.decode(small, Product.class));
+
+        byte[] compressed = CacheValueCodecs.encode(CacheValueCodecs.JSON, large, 256, stats);
+        assertNotEquals(CacheValueCodecs.JSON.getId(), compressed[0]);
+        assertTrue(compressed.length < CacheValueCodecs.encode(CacheValueCodecs.JSON, large).length);
+        assertEquals(large, CacheValueCodecs.decode(compressed, Product.class));
+
+        assertEquals(1, stats.getCompressedValues());
+        assertTrue(stats.getRatio() > 1);
+    }
+}